@@ -0,0 +1,434 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/* A scanner that produces exactly the tokens LexicalAnalyser does, but reads the whole source
+once (the file is memory-mapped and decoded in one go) and then scans a char array with an
+index cursor, instead of allocating a String per line and fetching every character through
+getNextCharacter.
+
+Line endings are normalised while loading the way BufferedReader.readLine sees them: "\r\n"
+and "\r" become '\n', and a last line without a terminator still ends with '\n'. The array is
+followed by the EOF character, which stops every scanning loop, so the loops need no bounds
+checks. Line numbers are counted exactly as LexicalAnalyser counts them.
+
+Tokens are shared where possible to keep allocation per token near zero. Fixed-text tokens
+(punctuation, operators, lower-case reserved words, EOF) are flyweights reused for as long as
+the scanner stays on the same line. Identifiers are interned in a SymbolTable and returned as
+IdentifierTokens carrying the name's id, one String per distinct name and, on the same line,
+one Token; numbers reuse the String (and, on the same line, the Token) of a recent occurrence
+of the same text. Callers must therefore treat the returned tokens as read-only. tokenStart and
+tokenLength give the last token's text as a slice of the source without copying it.
+
+Word-at-a-time scanning (the wordAtATime factories, or -Dlexer=words) keeps a copy of the
+source with one byte per character, its ASCII code or 0x80 for anything else, and skips runs of
+blanks and line breaks, comment bodies and runs of ASCII letters and digits eight characters per
+long read, classifying all eight bytes at once with SWAR (SIMD within a register) arithmetic.
+A non-ASCII character ends every run, and the scalar loops carry on from there with Character,
+so the tokens are the same either way; the copy costs a byte per character of memory. */
+
+public class ArrayLexicalAnalyser implements TokenSource {
+
+    /** The EOF character, also used as the sentinel after the source. */
+    private static final char EOF = '\000';
+
+    /* The normalised source, then EOF at index limit. */
+    private final char[] buf;
+    private final int limit;
+    private int pos;
+    private int currentLineNumber;
+    /* Slice of the source holding the text of the token returned last. */
+    private int tokenStart;
+    private int tokenLength;
+    /* Where scanning of the last token began, after any whitespace and comments. */
+    private int extentStart;
+
+    /* Flyweights for fixed-text symbols, indexed by symbol and valid for their line only. */
+    private final Token[] fixedTokens = new Token[Token.forSymbol + 1];
+    /* Recently seen number and mixed-case reserved word tokens, direct-mapped by a hash of their text. */
+    private static final int RECENT_SIZE = 256;
+    private final Token[] recentTokens = new Token[RECENT_SIZE];
+    /* The identifier names seen, and the last token for each, indexed by name id. */
+    private final SymbolTable symbols;
+    private IdentifierToken[] identifierTokens = new IdentifierToken[64];
+
+    /* For word-at-a-time scanning, each character of buf as a byte (0x80 if not ASCII) and at
+    least eight zero bytes after EOF, so a long can be read at any index up to limit; otherwise null. */
+    private final byte[] ascii;
+    private static final VarHandle WORDS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /** Creates a scanner over the given file, which is mapped and decoded with the default charset like FileReader does. */
+    public static ArrayLexicalAnalyser fromFile(String fileName) throws IOException {
+        return new ArrayLexicalAnalyser(load(fileName), new SymbolTable(), false);
+    }
+
+    /** As above, scanning word-at-a-time if wordAtATime is set. */
+    public static ArrayLexicalAnalyser fromFile(String fileName, boolean wordAtATime) throws IOException {
+        return new ArrayLexicalAnalyser(load(fileName), new SymbolTable(), wordAtATime);
+    }
+
+    /** As above, interning identifiers in symbols (see ofSource). */
+    public static ArrayLexicalAnalyser fromFile(String fileName, SymbolTable symbols, boolean wordAtATime) throws IOException {
+        return new ArrayLexicalAnalyser(load(fileName), symbols, wordAtATime);
+    }
+
+    /** Creates a scanner over a file's bytes already read into memory, decoded as fromFile decodes the file. */
+    public static ArrayLexicalAnalyser ofBytes(byte[] source, SymbolTable symbols, boolean wordAtATime) {
+        return new ArrayLexicalAnalyser(Charset.defaultCharset().decode(ByteBuffer.wrap(source)), symbols, wordAtATime);
+    }
+
+    /** Creates a scanner over source text already in memory. */
+    public static ArrayLexicalAnalyser ofSource(CharSequence source) {
+        return new ArrayLexicalAnalyser(CharBuffer.wrap(source), new SymbolTable(), false);
+    }
+
+/* Creates a scanner over source text that interns identifiers in symbols, so several scanners,
+or a scanner and the SyntaxTree it feeds, can share one set of name ids. */
+
+    public static ArrayLexicalAnalyser ofSource(CharSequence source, SymbolTable symbols) {
+        return new ArrayLexicalAnalyser(CharBuffer.wrap(source), symbols, false);
+    }
+
+    public static ArrayLexicalAnalyser ofSource(CharSequence source, SymbolTable symbols, boolean wordAtATime) {
+        return new ArrayLexicalAnalyser(CharBuffer.wrap(source), symbols, wordAtATime);
+    }
+
+    private ArrayLexicalAnalyser(CharBuffer source, SymbolTable symbols, boolean wordAtATime) {
+        int length = source.remaining();
+        char[] chars = new char[length + 2];
+        byte[] bytes = wordAtATime ? new byte[length + 10] : null;
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char c = source.get(i);
+            if (c == '\r') {
+                if (i + 1 < length && source.get(i + 1) == '\n') {
+                    i++;
+                }
+                c = '\n';
+            }
+            if (bytes != null) {
+                bytes[n] = (byte) (c < 0x80 ? c : 0x80);
+            }
+            chars[n++] = c;
+        }
+        if (n > 0 && chars[n - 1] != '\n') {
+            if (bytes != null) {
+                bytes[n] = '\n';
+            }
+            chars[n++] = '\n';
+        }
+        chars[n] = EOF;
+        this.buf = chars;
+        this.limit = n;
+        this.symbols = symbols;
+        this.ascii = bytes;
+    }
+
+/* Scans text that is already normalised: buf[0, limit) uses '\n' line endings, ends with '\n'
+unless empty, and buf[limit] is EOF. Scanning starts at offset with the given line count, which
+must be a position where an earlier scan ended a token (see tokenExtentEnd). The array is used
+in place, not copied. */
+
+    ArrayLexicalAnalyser(char[] buf, int limit, int offset, int lineNumber, SymbolTable symbols) {
+        this.buf = buf;
+        this.limit = limit;
+        this.pos = offset;
+        this.currentLineNumber = lineNumber;
+        this.symbols = symbols;
+        this.ascii = null;
+    }
+
+    private static CharBuffer load(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return Charset.defaultCharset().decode(bytes);
+        }
+    }
+
+    /** Returns the next token, the same one LexicalAnalyser.getNextToken would return. */
+    @Override
+    public Token getNextToken() {
+        final char[] buf = this.buf;
+        int pos = this.pos;
+        char c = buf[pos];
+
+        while ((c == ' ') || (c == '\t') || (c == '\n') || (c == '-')) {
+            if (c == '-') {
+                c = buf[++pos];
+                if (c == '-') {
+                    if (ascii != null) {
+                        pos = lineEnd(pos);
+                        c = buf[pos];
+                    }
+                    while (c != '\n')
+                        c = buf[++pos];
+                } else {
+                    extentStart = pos - 1;
+                    setPosition(pos - 1, pos);
+                    return fixed(Token.minusSymbol, "-");
+                }
+            }
+
+            if (c == '\n')
+                currentLineNumber++;
+            c = buf[++pos];
+            if (ascii != null && (c == ' ' || c == '\t' || c == '\n')) {
+                pos = skipBlanks(pos);
+                c = buf[pos];
+            }
+        }
+
+        int start = pos;
+        extentStart = pos;
+        if (Character.isLetter(c)) {
+            c = buf[++pos];
+            if (ascii != null) {
+                pos = wordEnd(pos);
+                c = buf[pos];
+            }
+            while (Character.isLetter(c) || Character.isDigit(c))
+                c = buf[++pos];
+            setPosition(start, pos);
+            int length = pos - start;
+            int symbol = ReservedWords.lookup(buf, start, length);
+            if (symbol == Token.identifier)
+                return identifier(start, length);
+            if (ReservedWords.isLowerCase(buf, start, length, symbol))
+                return fixed(symbol, ReservedWords.spelling(symbol));
+            return recent(symbol, start, length);
+        } else if (Character.isDigit(c)) {
+            do
+                c = buf[++pos];
+            while (Character.isDigit(c));
+            if (c == '.') {
+                do
+                    c = buf[++pos];
+                while (Character.isDigit(c));
+            }
+            setPosition(start, pos);
+            return recent(Token.numberConstant, start, pos - start);
+        } else if (c == '"') {
+            start = ++pos;
+            while (pos < limit && buf[pos] != '"')
+                pos++;
+            int end = pos;
+            if (pos < limit)
+                pos++;
+            setPosition(start, end);
+            this.pos = pos;
+            return new Token(Token.stringConstant, new String(buf, start, end - start), currentLineNumber);
+        }
+
+        switch (c) {
+            case ':':
+                return pair(pos, '=', Token.becomesSymbol, ":=", Token.colonSymbol, ":");
+            case '>':
+                return pair(pos, '=', Token.greaterEqualSymbol, ">=", Token.greaterThanSymbol, ">");
+            case '<':
+                return pair(pos, '=', Token.lessEqualSymbol, "<=", Token.lessThanSymbol, "<");
+            case '!':
+                if (buf[pos + 1] == '=') {
+                    setPosition(pos, pos + 2);
+                    return fixed(Token.notEqualSymbol, "!=");
+                }
+                /* like LexicalAnalyser, a lone '!' also swallows the character after it */
+                pos++;
+                setPosition(pos, pos);
+                this.pos = pos < limit ? pos + 1 : pos;
+                return fixed(Token.errorSymbol, "");
+            case '=':
+                return single(pos, Token.equalSymbol, "=");
+            case ',':
+                return single(pos, Token.commaSymbol, ",");
+            case ';':
+                return single(pos, Token.semicolonSymbol, ";");
+            case '+':
+                return single(pos, Token.plusSymbol, "+");
+            case '/':
+                return single(pos, Token.divideSymbol, "/");
+            case '%':
+                return single(pos, Token.modSymbol, "%");
+            case '*':
+                return single(pos, Token.timesSymbol, "*");
+            case '(':
+                return single(pos, Token.leftParenthesis, "(");
+            case ')':
+                return single(pos, Token.rightParenthesis, ")");
+            case EOF:
+                setPosition(pos, pos);
+                return fixed(Token.eofSymbol, "");
+            default:
+                setPosition(pos, pos);
+                this.pos = pos + 1;
+                return fixed(Token.errorSymbol, "");
+        }
+    }
+
+    /* ---- word-at-a-time scanning ---- */
+
+    /* The index of the first '\n' at or after pos; the source ends with one, so there is one. */
+    private int lineEnd(int pos) {
+        long found;
+        while ((found = equal((long) WORDS.get(ascii, pos), '\n')) == 0)
+            pos += 8;
+        return pos + (Long.numberOfTrailingZeros(found) >>> 3);
+    }
+
+    /* The index of the first character at or after pos that is not ' ', '\t' or '\n', counting the '\n's passed. */
+    private int skipBlanks(int pos) {
+        while (true) {
+            long word = (long) WORDS.get(ascii, pos);
+            long breaks = equal(word, '\n');
+            long others = ~(equal(word, ' ') | equal(word, '\t') | breaks) & HIGHS;
+            if (others != 0) {
+                int bit = Long.numberOfTrailingZeros(others);
+                currentLineNumber += Long.bitCount(breaks & ((1L << bit) - 1));
+                return pos + (bit >>> 3);
+            }
+            currentLineNumber += Long.bitCount(breaks);
+            pos += 8;
+        }
+    }
+
+    /* The index of the first character at or after pos that is not an ASCII letter or digit. */
+    private int wordEnd(int pos) {
+        while (true) {
+            long word = (long) WORDS.get(ascii, pos);
+            long others = ~(between(word | ONES * 0x20, 'a', 'z') | between(word, '0', '9')) & HIGHS;
+            if (others != 0)
+                return pos + (Long.numberOfTrailingZeros(others) >>> 3);
+            pos += 8;
+        }
+    }
+
+    /* 0x80 in each byte of word that equals b, 0 in the others. */
+    private static long equal(long word, int b) {
+        long bits = word ^ (ONES * b);
+        return ~(((bits & LOWS) + LOWS) | bits | LOWS);
+    }
+
+/* 0x80 in each byte of word from low to high, 0 in the others. Adding 0x80 - low to a byte below
+0x80 sets its top bit just when it is at least low, adding 0x7F - high just when it is above
+high, and neither sum carries into the next byte; bytes with the top bit already set (non-ASCII)
+are never in range. */
+
+    private static long between(long word, int low, int high) {
+        long bits = word & LOWS;
+        return (bits + ONES * (0x80 - low)) & ~(bits + ONES * (0x7F - high)) & ~word & HIGHS;
+    }
+
+    private Token single(int pos, int symbol, String text) {
+        setPosition(pos, pos + 1);
+        return fixed(symbol, text);
+    }
+
+    /* A one-character token that becomes a two-character one when followed by second. */
+    private Token pair(int pos, char second, int longSymbol, String longText, int shortSymbol, String shortText) {
+        if (buf[pos + 1] == second) {
+            setPosition(pos, pos + 2);
+            return fixed(longSymbol, longText);
+        }
+        setPosition(pos, pos + 1);
+        return fixed(shortSymbol, shortText);
+    }
+
+    /* Records the last token's slice [start, end) and moves the cursor to end. */
+    private void setPosition(int start, int end) {
+        tokenStart = start;
+        tokenLength = end - start;
+        pos = end;
+    }
+
+    /* The shared token for a fixed-text symbol on the current line. */
+    private Token fixed(int symbol, String text) {
+        Token token = fixedTokens[symbol];
+        if (token == null || token.lineNumber != currentLineNumber) {
+            token = new Token(symbol, text, currentLineNumber);
+            fixedTokens[symbol] = token;
+        }
+        return token;
+    }
+
+    /* The token for an identifier, shared by its occurrences on the current line. */
+    private Token identifier(int start, int length) {
+        int id = symbols.intern(buf, start, length);
+        if (id >= identifierTokens.length)
+            identifierTokens = Arrays.copyOf(identifierTokens, Math.max(id + 1, identifierTokens.length * 2));
+        IdentifierToken token = identifierTokens[id];
+        if (token == null || token.lineNumber != currentLineNumber) {
+            token = new IdentifierToken(symbols.name(id), currentLineNumber, id);
+            identifierTokens[id] = token;
+        }
+        return token;
+    }
+
+    /* A token for a mixed-case reserved word or number, reusing an earlier one with the same text. */
+    private Token recent(int symbol, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++)
+            hash = 31 * hash + buf[i];
+        int slot = (hash ^ (hash >>> 8)) & (RECENT_SIZE - 1);
+        Token token = recentTokens[slot];
+        if (token != null && token.symbol == symbol && sameText(token.text, start, length)) {
+            if (token.lineNumber == currentLineNumber)
+                return token;
+            token = new Token(symbol, token.text, currentLineNumber);
+        } else {
+            token = new Token(symbol, new String(buf, start, length), currentLineNumber);
+        }
+        recentTokens[slot] = token;
+        return token;
+    }
+
+    private boolean sameText(String text, int start, int length) {
+        if (text.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != buf[start + i])
+                return false;
+        }
+        return true;
+    }
+
+    /** Offset in the source of the text of the token returned last. */
+    public int tokenStart() {
+        return tokenStart;
+    }
+
+    /** Length of the text of the token returned last; with tokenStart and source, a zero-copy view of it. */
+    public int tokenLength() {
+        return tokenLength;
+    }
+
+    /** Offset where the last token begins in the source, including a string's opening quote. */
+    public int tokenExtentStart() {
+        return extentStart;
+    }
+
+    /** Offset just after everything scanning the last token consumed; the next scan starts here. */
+    public int tokenExtentEnd() {
+        return pos;
+    }
+
+    /** The line count at the current position, i.e. the line number of the token returned last. */
+    public int lineNumber() {
+        return currentLineNumber;
+    }
+
+    /** The table the scanner interns identifiers in. */
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    /** The normalised source the token slices refer to; it must not be modified. */
+    public char[] source() {
+        return buf;
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/* A Generate that records the trace as a compact binary event stream instead of text: most
+events are a single byte where the text line is 20 to 40, which matters once traces of large
+corpora run to gigabytes. BinaryTraceReader reads the file back, memory-mapped, and can start
+at any line; TraceReplay prints it as exactly the text Generate would have printed.
+
+The file is a header, the events, and a footer written by close():
+
+    header       int MAGIC, int VERSION
+    events       one tag byte each, some followed by a varint:
+                   1-63      TOKEN of that Token symbol on the current line; an identifier,
+                             number or string is followed by the index of its text
+                   64 + id   BEGIN of Nonterminal id
+                   96 + id   END of Nonterminal id
+                   LINE      zigzag varint: the current line changes by that much
+                   SUCCESS
+                   ERROR     index of the error line
+                   BEGIN_NAMED, END_NAMED
+                             index of the name, for nonterminals given by name
+    texts        each distinct text once, in index order: varint length, UTF-8 bytes
+    text index   long offset of each text
+    checkpoints  int line, long offset: the line is current at the offset, and every event
+                 from there on can be decoded without reading anything before it
+    trailer      long events, long textsOffset, long textIndexOffset, long checkpointsOffset,
+                 int texts, int checkpoints, int MAGIC
+
+Texts are interned as they are written, so memory grows with the number of distinct names and
+constants, not with the length of the program. A checkpoint is taken at a line change once
+CHECKPOINT_BYTES of events have gone by since the last one. */
+
+public class BinaryTraceGenerate extends Generate implements Closeable {
+
+    static final int MAGIC = 0x33313242;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int TRAILER_BYTES = 44;
+    static final int CHECKPOINT_BYTES = 4096;
+
+    static final int BEGIN = 64;
+    static final int END = 96;
+    static final int LINE = 128;
+    static final int SUCCESS = 129;
+    static final int ERROR = 130;
+    static final int BEGIN_NAMED = 131;
+    static final int END_NAMED = 132;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int used;
+    private long position;
+    private long events;
+
+    private final Map<String, Integer> textIndexes = new HashMap<>();
+    private final List<String> texts = new ArrayList<>();
+    private int line;
+
+    private int[] checkpointLines = new int[64];
+    private long[] checkpointOffsets = new long[64];
+    private int checkpoints;
+
+    public BinaryTraceGenerate(OutputStream out, ParseListener... listeners) throws IOException {
+        super(null, false, listeners);
+        this.out = out;
+        writeInt(MAGIC);
+        writeInt(VERSION);
+        checkpoint();
+    }
+
+    public BinaryTraceGenerate(String fileName) throws IOException {
+        this(new FileOutputStream(fileName));
+    }
+
+    /* Whether a token of this symbol shows its text in the trace, and so records it. */
+    static boolean hasText(int symbol) {
+        return symbol == Token.identifier || symbol == Token.numberConstant || symbol == Token.stringConstant;
+    }
+
+    /* ---- events ---- */
+
+    @Override
+    public void commenceNonterminal(int nonterminal) {
+        event(BEGIN + id(nonterminal));
+        super.commenceNonterminal(nonterminal);
+    }
+
+    @Override
+    public void finishNonterminal(int nonterminal) {
+        event(END + id(nonterminal));
+        super.finishNonterminal(nonterminal);
+    }
+
+    @Override
+    public void terminalAccepted(Token token) {
+        insertTerminal(token);
+        super.terminalAccepted(token);
+    }
+
+    @Override
+    public void insertTerminal(Token token) {
+        if (token.symbol < 1 || token.symbol >= BEGIN) {
+            throw new IllegalArgumentException("token symbol " + token.symbol + " does not fit the binary trace");
+        }
+        if (token.lineNumber != line) {
+            boolean due = position + used - checkpointOffsets[checkpoints - 1] >= CHECKPOINT_BYTES;
+            put(LINE);
+            varint(zigzag(token.lineNumber - line));
+            line = token.lineNumber;
+            if (due) {
+                checkpoint();
+            }
+        }
+        event(token.symbol);
+        if (hasText(token.symbol)) {
+            varint(intern(token.text));
+        }
+    }
+
+    @Override
+    public void commenceNonterminal(String name) {
+        event(BEGIN_NAMED);
+        varint(intern(name));
+    }
+
+    @Override
+    public void finishNonterminal(String name) {
+        event(END_NAMED);
+        varint(intern(name));
+    }
+
+    @Override
+    public void reportSuccess() {
+        event(SUCCESS);
+    }
+
+    @Override
+    public void reportError(Token token, String explanatoryMessage) throws CompilationException {
+        String errorMessage = errorMessage(token, explanatoryMessage);
+        event(ERROR);
+        varint(intern(errorMessage));
+        throw new ParseFailure(errorMessage);
+    }
+
+    private static int id(int nonterminal) {
+        if (nonterminal < 1 || nonterminal >= END - BEGIN) {
+            throw new IllegalArgumentException("nonterminal " + nonterminal + " does not fit the binary trace");
+        }
+        return nonterminal;
+    }
+
+    private void event(int tag) {
+        events++;
+        put(tag);
+    }
+
+    private int intern(String text) {
+        Integer index = textIndexes.get(text);
+        if (index == null) {
+            index = texts.size();
+            textIndexes.put(text, index);
+            texts.add(text);
+        }
+        return index;
+    }
+
+    private void checkpoint() {
+        if (checkpoints == checkpointLines.length) {
+            checkpointLines = Arrays.copyOf(checkpointLines, checkpoints * 2);
+            checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpoints * 2);
+        }
+        checkpointLines[checkpoints] = line;
+        checkpointOffsets[checkpoints] = position + used;
+        checkpoints++;
+    }
+
+    /* ---- the footer ---- */
+
+/* Writes the texts, checkpoints and trailer and closes the stream. The file is not readable
+until this has been called. */
+
+    @Override
+    public void close() throws IOException {
+        long textsOffset = position + used;
+        long[] textOffsets = new long[texts.size()];
+        for (int i = 0; i < textOffsets.length; i++) {
+            textOffsets[i] = position + used;
+            byte[] bytes = texts.get(i).getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            for (byte b : bytes) {
+                put(b);
+            }
+        }
+        long textIndexOffset = position + used;
+        for (long offset : textOffsets) {
+            writeLong(offset);
+        }
+        long checkpointsOffset = position + used;
+        for (int i = 0; i < checkpoints; i++) {
+            writeInt(checkpointLines[i]);
+            writeLong(checkpointOffsets[i]);
+        }
+        writeLong(events);
+        writeLong(textsOffset);
+        writeLong(textIndexOffset);
+        writeLong(checkpointsOffset);
+        writeInt(texts.size());
+        writeInt(checkpoints);
+        writeInt(MAGIC);
+        drain();
+        out.close();
+    }
+
+    /* ---- bytes ---- */
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private void varint(int value) {
+        while ((value & ~0x7F) != 0) {
+            put((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        put(value);
+    }
+
+    private void writeInt(int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            put(value >>> shift);
+        }
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void put(int value) {
+        if (used == buffer.length) {
+            drain();
+        }
+        buffer[used++] = (byte) value;
+    }
+
+    private void drain() {
+        try {
+            out.write(buffer, 0, used);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position += used;
+        used = 0;
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/* Reads a trace written by BinaryTraceGenerate. The file is memory-mapped rather than read, so
+opening a trace of any size costs nothing until its events are visited, and only the pages
+visited are read. A file over 2 GB is mapped in 1 GB segments.
+
+A Cursor decodes one event at a time: cursor() starts at the beginning and seekLine(n) just
+before the events of line n, found by a binary search of the checkpoints and a scan of at most
+a few KB from the nearest one. Texts are decoded only when asked for. The mapping is released
+by the garbage collector once the reader is unreachable; close() closes the file. */
+
+public class BinaryTraceReader implements Closeable {
+
+    /* Event kinds, as Cursor.kind() returns them. */
+    public static final int BEGIN = 1;
+    public static final int END = 2;
+    public static final int TOKEN = 3;
+    public static final int SUCCESS = 4;
+    public static final int ERROR = 5;
+
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long events;
+    private final long eventsEnd;
+    private final long textIndexOffset;
+    private final long checkpointsOffset;
+    private final int textCount;
+    private final int checkpointCount;
+    private final String[] texts;
+
+    public BinaryTraceReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size < BinaryTraceGenerate.HEADER_BYTES + BinaryTraceGenerate.TRAILER_BYTES) {
+            channel.close();
+            throw new IOException(file + " is not a binary trace");
+        }
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = (long) i << SEGMENT_BITS;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << SEGMENT_BITS));
+        }
+
+        long trailer = size - BinaryTraceGenerate.TRAILER_BYTES;
+        if (readInt(0) != BinaryTraceGenerate.MAGIC || readInt(size - 4) != BinaryTraceGenerate.MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not a binary trace, or was not closed");
+        }
+        if (readInt(4) != BinaryTraceGenerate.VERSION) {
+            channel.close();
+            throw new IOException(file + " is binary trace version " + readInt(4) + ", not " + BinaryTraceGenerate.VERSION);
+        }
+        events = readLong(trailer);
+        eventsEnd = readLong(trailer + 8);
+        textIndexOffset = readLong(trailer + 16);
+        checkpointsOffset = readLong(trailer + 24);
+        textCount = readInt(trailer + 32);
+        checkpointCount = readInt(trailer + 36);
+        texts = new String[textCount];
+    }
+
+    /* Number of events in the trace. */
+    public long events() {
+        return events;
+    }
+
+    /* Bytes of events, without the header and footer. */
+    public long eventBytes() {
+        return eventsEnd - BinaryTraceGenerate.HEADER_BYTES;
+    }
+
+    public int texts() {
+        return textCount;
+    }
+
+    public Cursor cursor() {
+        return new Cursor(BinaryTraceGenerate.HEADER_BYTES, 0);
+    }
+
+/* A cursor whose next event is the first after the last token on a line before line, so the
+events that lead up to line's first token (the nonterminals begun before it) come first. */
+
+    public Cursor seekLine(int line) {
+        int low = 0;
+        int high = checkpointCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (readInt(checkpointsOffset + 12L * middle) < line) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        long checkpoint = checkpointsOffset + 12L * low;
+        Cursor cursor = new Cursor(readLong(checkpoint + 4), readInt(checkpoint));
+        long start = cursor.position;
+        int startLine = cursor.line;
+        while (cursor.next()) {
+            if (cursor.kind == TOKEN) {
+                if (cursor.line >= line) {
+                    break;
+                }
+                start = cursor.position;
+                startLine = cursor.line;
+            }
+        }
+        return new Cursor(start, startLine);
+    }
+
+    /* The text with the given index, decoded the first time it is asked for. */
+    String text(int index) {
+        String text = texts[index];
+        if (text == null) {
+            long position = readLong(textIndexOffset + 8L * index);
+            int length = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = get(position++);
+                length |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = get(position + i);
+            }
+            text = new String(bytes, StandardCharsets.UTF_8);
+            texts[index] = text;
+        }
+        return text;
+    }
+
+    /** Decodes the events from one position on. */
+    public final class Cursor {
+        private long position;
+        private int line;
+        private int kind;
+        private int value;
+        private int textIndex;
+
+        private Cursor(long position, int line) {
+            this.position = position;
+            this.line = line;
+        }
+
+        /* Moves to the next event; false at the end of the trace. */
+        public boolean next() {
+            while (position < eventsEnd) {
+                int tag = get(position++) & 0xFF;
+                if (tag == BinaryTraceGenerate.LINE) {
+                    int delta = varint();
+                    line += (delta >>> 1) ^ -(delta & 1);
+                    continue;
+                }
+                textIndex = -1;
+                if (tag < BinaryTraceGenerate.BEGIN) {
+                    kind = TOKEN;
+                    value = tag;
+                    if (BinaryTraceGenerate.hasText(tag)) {
+                        textIndex = varint();
+                    }
+                } else if (tag < BinaryTraceGenerate.END) {
+                    kind = BEGIN;
+                    value = tag - BinaryTraceGenerate.BEGIN;
+                } else if (tag < BinaryTraceGenerate.LINE) {
+                    kind = END;
+                    value = tag - BinaryTraceGenerate.END;
+                } else if (tag == BinaryTraceGenerate.SUCCESS) {
+                    kind = SUCCESS;
+                } else if (tag == BinaryTraceGenerate.ERROR) {
+                    kind = ERROR;
+                    textIndex = varint();
+                } else if (tag == BinaryTraceGenerate.BEGIN_NAMED || tag == BinaryTraceGenerate.END_NAMED) {
+                    kind = tag == BinaryTraceGenerate.BEGIN_NAMED ? BEGIN : END;
+                    value = 0;
+                    textIndex = varint();
+                } else {
+                    throw new IllegalStateException("bad event tag " + tag + " at " + (position - 1));
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = get(position++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        public int kind() {
+            return kind;
+        }
+
+        /* The Nonterminal id of a BEGIN or END, or 0 if it was given by name. */
+        public int nonterminal() {
+            return kind == BEGIN || kind == END ? value : 0;
+        }
+
+        /* The name of a BEGIN or END's nonterminal. */
+        public String name() {
+            return value == 0 ? BinaryTraceReader.this.text(textIndex) : Nonterminal.getName(value);
+        }
+
+        /* The Token symbol of a TOKEN. */
+        public int symbol() {
+            return kind == TOKEN ? value : 0;
+        }
+
+        /* The line of the last token read. */
+        public int line() {
+            return line;
+        }
+
+        /* A TOKEN's text if the trace shows it, an ERROR's line, otherwise null. */
+        public String text() {
+            return textIndex < 0 ? null : BinaryTraceReader.this.text(textIndex);
+        }
+
+        /* The offset in the file of the next event. */
+        public long position() {
+            return position;
+        }
+
+/* Prints the event as Generate prints it, through generate for everything but an error line,
+which Generate prints only as it throws. */
+
+        public void replay(Generate generate, PrintStream out) {
+            switch (kind) {
+                case BEGIN:
+                    generate.commenceNonterminal(name());
+                    break;
+                case END:
+                    generate.finishNonterminal(name());
+                    break;
+                case TOKEN:
+                    generate.insertTerminal(new Token(value, text(), line));
+                    break;
+                case SUCCESS:
+                    generate.reportSuccess();
+                    break;
+                default:
+                    out.println(text());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /* ---- the mapping ---- */
+
+    private byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    private int readInt(long position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (get(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    private long readLong(long position) {
+        return ((long) readInt(position) << 32) | (readInt(position + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.*;
+import java.util.concurrent.*;
+
+/* A Generate that appends trace lines to a reusable in-memory buffer instead of calling
+System.out.println for every grammar event. Full buffers are handed to a background writer
+thread, which drains them to the output stream while parsing carries on. The buffer is handed
+over once it reaches a size threshold or has been held for longer than a time threshold, and
+reportSuccess/reportError always wait until everything has been written, so the text (and its
+order relative to anything else printed on the same stream) is exactly what Generate prints. */
+
+public class BufferedGenerate extends Generate implements Closeable {
+
+    private static final String NEWLINE = System.lineSeparator();
+    private static final int DEFAULT_FLUSH_SIZE = 64 * 1024;
+    private static final long DEFAULT_FLUSH_MILLIS = 200;
+
+    private final OutputStream stream;
+    private final Writer out;
+    private final int flushSize;
+    private final long flushNanos;
+
+    /* Two buffers alternate between the parser and the writer thread. */
+    private final BlockingQueue<StringBuilder> free = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<StringBuilder> full = new ArrayBlockingQueue<>(2);
+    private StringBuilder buffer;
+    private long lastHandOff;
+    private Thread writer;
+
+    private long handedOff;
+    private long written;
+    private IOException failure;
+
+    public BufferedGenerate(OutputStream stream, ParseListener... listeners) {
+        this(stream, DEFAULT_FLUSH_SIZE, DEFAULT_FLUSH_MILLIS, listeners);
+    }
+
+    public BufferedGenerate(String fileName) throws IOException {
+        this(new FileOutputStream(fileName));
+    }
+
+    public BufferedGenerate(OutputStream stream, int flushSize, long flushMillis, ParseListener... listeners) {
+        super(null, true, listeners);
+        this.stream = stream;
+        this.out = new OutputStreamWriter(stream);
+        this.flushSize = flushSize;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.buffer = new StringBuilder(flushSize + 256);
+        free.add(new StringBuilder(flushSize + 256));
+        this.lastHandOff = System.nanoTime();
+    }
+
+    @Override
+    public void insertTerminal(Token token) {
+        buffer.append("312TOKEN ").append(Token.getName(token.symbol));
+        if (token.symbol == Token.identifier || token.symbol == Token.numberConstant || token.symbol == Token.stringConstant) {
+            buffer.append(" '").append(token.text).append('\'');
+        }
+        buffer.append(" on line ").append(token.lineNumber).append(NEWLINE);
+        checkThresholds();
+    }
+
+    @Override
+    public void commenceNonterminal(String name) {
+        buffer.append("312BEGIN ").append(name).append(NEWLINE);
+        checkThresholds();
+    }
+
+    @Override
+    public void finishNonterminal(String name) {
+        buffer.append("312END ").append(name).append(NEWLINE);
+        checkThresholds();
+    }
+
+    @Override
+    public void reportSuccess() {
+        buffer.append("312SUCCESS").append(NEWLINE);
+        flushQuietly();
+    }
+
+    @Override
+    public void reportError(Token token, String explanatoryMessage) throws CompilationException {
+        String errorMessage = errorMessage(token, explanatoryMessage);
+        buffer.append(errorMessage).append(NEWLINE);
+        flushQuietly();
+        throw new ParseFailure(errorMessage);
+    }
+
+    private void checkThresholds() {
+        if (buffer.length() >= flushSize || System.nanoTime() - lastHandOff >= flushNanos) {
+            handOff();
+        }
+    }
+
+/* Gives the current buffer to the writer thread and takes the spare one back, blocking only
+if the writer is still busy with the previous buffer. */
+
+    private void handOff() {
+        if (buffer.length() == 0) {
+            return;
+        }
+        if (writer == null) {
+            writer = new Thread(this::drain, "trace-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        synchronized (this) {
+            handedOff++;
+        }
+        putUninterruptibly(full, buffer);
+        buffer = takeUninterruptibly(free);
+        lastHandOff = System.nanoTime();
+    }
+
+/* Hands off whatever is buffered and waits until the writer has written and flushed it,
+then lets the writer thread finish; it is restarted if more events arrive later. */
+
+    public void flush() throws IOException {
+        handOff();
+        synchronized (this) {
+            boolean interrupted = false;
+            while (written < handedOff && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                IOException e = failure;
+                failure = null;
+                throw e;
+            }
+        }
+        if (writer != null) {
+            putUninterruptibly(full, new StringBuilder(0));
+            joinUninterruptibly(writer);
+            writer = null;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("unable to write trace " + e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (stream != System.out && stream != System.err) {
+            out.close();
+        }
+    }
+
+/* Body of the writer thread: writes each full buffer, clears it and returns it to the parser.
+An empty buffer is the signal to stop. */
+
+    private void drain() {
+        while (true) {
+            StringBuilder next = takeUninterruptibly(full);
+            if (next.length() == 0) {
+                return;
+            }
+            IOException error = null;
+            try {
+                out.append(next);
+                out.flush();
+            } catch (IOException e) {
+                error = e;
+            }
+            next.setLength(0);
+            putUninterruptibly(free, next);
+            synchronized (this) {
+                written++;
+                if (error != null) {
+                    failure = error;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
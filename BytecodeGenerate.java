@@ -0,0 +1,309 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+
+/* A Generate that compiles the program it parses to JVM bytecode, so the program's hot loops
+are JIT-compiled like any Java code instead of being walked by the Interpreter:
+
+    BytecodeGenerate generate = new BytecodeGenerate();
+    new SyntaxAnalyser(fileName, generate).parse(res);
+    generate.compile().run(ProgramIO.console(new InputStreamReader(System.in), System.out));
+
+It records the parse in a SyntaxTree (and prints the trace too if asked to), and once the parse
+has succeeded compile() turns it into a Program and the Program into one class with a single
+run method, defined as a hidden class of this class's package, so it needs no class loader of
+its own and is unloaded once the runner is unreachable. Every variable is a local of run: a
+number is a double local, and text a String local, and the expressions compile to the double
+arithmetic instructions. call get and call put become calls to the ProgramIO passed to run.
+
+Jumps are 16-bit while run is under 32 KB; a longer run method is emitted again with 32-bit
+jumps. The class file format still limits run to 64 KB of bytecode and the class to 65535
+constants, which a program of some tens of thousands of statements can exceed: classFile then
+throws ClassWriter.ClassTooLargeException, and compile returns an Interpreter for the program
+instead, since the Interpreter runs any program. */
+
+public class BytecodeGenerate extends Generate {
+
+    private static final String CLASS_NAME = "CompiledProgram";
+    private static final String IO = "ProgramIO";
+    private static final String STRING = "java/lang/String";
+
+    private final SyntaxTree tree;
+
+    public BytecodeGenerate() {
+        this(null, false);
+    }
+
+    public BytecodeGenerate(PrintStream out, boolean trace) {
+        this(out, trace, new SyntaxTree());
+    }
+
+    private BytecodeGenerate(PrintStream out, boolean trace, SyntaxTree tree) {
+        super(out, trace, tree);
+        this.tree = tree;
+    }
+
+    /* The tree's table, for the scanner to intern names in. */
+    @Override
+    public SymbolTable symbols() {
+        return tree.symbols();
+    }
+
+    public SyntaxTree tree() {
+        return tree;
+    }
+
+    /* The program parsed; throws IllegalArgumentException if the parse failed or it misuses text. */
+    public Program program() {
+        return Program.from(tree);
+    }
+
+    public ProgramRunner compile() {
+        return compile(program());
+    }
+
+    public static ProgramRunner compile(Program program) {
+        byte[] bytes;
+        try {
+            bytes = classFile(program);
+        } catch (ClassWriter.ClassTooLargeException e) {
+            return new Interpreter(program);
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (ProgramRunner) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot load the compiled program", e);
+        }
+    }
+
+/* The class file for program: a final class implementing ProgramRunner whose run method is the
+whole program. */
+
+    public static byte[] classFile(Program program) {
+        byte[] bytes = classFile(program, false);
+        return bytes != null ? bytes : classFile(program, true);
+    }
+
+    /* As above, or null if run needs long jumps but longJumps is not set. */
+    private static byte[] classFile(Program program, boolean longJumps) {
+        ClassWriter writer = new ClassWriter(CLASS_NAME, "java/lang/Object", "ProgramRunner");
+        writer.method(ClassWriter.ACC_PUBLIC, "<init>", "()V", CLASS_NAME)
+                .loadObject(0)
+                .invoke(ClassWriter.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", -1)
+                .op(ClassWriter.RETURN, 0)
+                .end();
+        if (!new Emitter(writer, program, longJumps).run()) {
+            return null;
+        }
+        return writer.toByteArray();
+    }
+
+    /** Emits the run method of one program. */
+    private static final class Emitter {
+        private final Program program;
+        private final ClassWriter.Code code;
+        private final int[] slots;
+        private final boolean longJumps;
+
+        Emitter(ClassWriter writer, Program program, boolean longJumps) {
+            this.program = program;
+            this.longJumps = longJumps;
+            int count = program.variableCount();
+            slots = new int[count];
+            Object[] locals = new Object[2 + count];
+            locals[0] = CLASS_NAME;
+            locals[1] = IO;
+            int slot = 2;
+            for (int variable = 0; variable < count; variable++) {
+                slots[variable] = slot;
+                locals[2 + variable] = program.holdsText(variable) ? STRING : ClassWriter.DOUBLE;
+                slot += program.holdsText(variable) ? 1 : 2;
+            }
+            code = writer.method(ClassWriter.ACC_PUBLIC, "run", "(L" + IO + ";)V", locals);
+            if (longJumps) {
+                code.longJumps();
+            }
+        }
+
+        /* Emits run and adds it to the class, unless it is too long for 16-bit jumps and long
+        jumps were not asked for; returns whether it did. */
+        boolean run() {
+            for (int variable = 0; variable < slots.length; variable++) {
+                if (program.holdsText(variable)) {
+                    code.constant("").storeObject(slots[variable]);
+                } else {
+                    code.constant(0.0).storeDouble(slots[variable]);
+                }
+            }
+            statements(program.statements());
+            code.op(ClassWriter.RETURN, 0);
+            if (code.size() > Short.MAX_VALUE && !longJumps) {
+                return false;
+            }
+            code.end();
+            return true;
+        }
+
+        private void statements(List<Program.Statement> statements) {
+            for (Program.Statement statement : statements) {
+                statement(statement);
+            }
+        }
+
+        private void statement(Program.Statement statement) {
+            switch (statement.kind) {
+                case Program.ASSIGN:
+                    assign(statement);
+                    break;
+                case Program.IF: {
+                    ClassWriter.Label otherwise = new ClassWriter.Label();
+                    jumpUnless(statement.condition, otherwise);
+                    statements(statement.body);
+                    if (statement.otherwise.isEmpty()) {
+                        code.bind(otherwise);
+                    } else {
+                        ClassWriter.Label end = new ClassWriter.Label();
+                        code.jump(ClassWriter.GOTO, end).bind(otherwise);
+                        statements(statement.otherwise);
+                        code.bind(end);
+                    }
+                    break;
+                }
+                case Program.WHILE:
+                case Program.FOR: {
+                    if (statement.kind == Program.FOR) {
+                        assign(statement.initial);
+                    }
+                    ClassWriter.Label test = new ClassWriter.Label();
+                    ClassWriter.Label end = new ClassWriter.Label();
+                    code.bind(test);
+                    jumpUnless(statement.condition, end);
+                    statements(statement.body);
+                    if (statement.kind == Program.FOR) {
+                        assign(statement.step);
+                    }
+                    code.jump(ClassWriter.GOTO, test).bind(end);
+                    break;
+                }
+                case Program.UNTIL: {
+                    ClassWriter.Label top = new ClassWriter.Label();
+                    code.bind(top);
+                    statements(statement.body);
+                    jumpUnless(statement.condition, top);
+                    break;
+                }
+                case Program.GET:
+                    for (int variable : statement.arguments) {
+                        code.loadObject(1);
+                        if (program.holdsText(variable)) {
+                            code.invoke(ClassWriter.INVOKEINTERFACE, IO, "getText", "()L" + STRING + ";", 0).storeObject(slots[variable]);
+                        } else {
+                            code.invoke(ClassWriter.INVOKEINTERFACE, IO, "getNumber", "()D", 1).storeDouble(slots[variable]);
+                        }
+                    }
+                    break;
+                case Program.PUT:
+                    for (int variable : statement.arguments) {
+                        code.loadObject(1);
+                        if (program.holdsText(variable)) {
+                            code.loadObject(slots[variable]).invoke(ClassWriter.INVOKEINTERFACE, IO, "put", "(L" + STRING + ";)V", -2);
+                        } else {
+                            code.loadDouble(slots[variable]).invoke(ClassWriter.INVOKEINTERFACE, IO, "put", "(D)V", -3);
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("unknown statement kind " + statement.kind);
+            }
+        }
+
+        private void assign(Program.Statement statement) {
+            if (statement.text != null) {
+                code.constant(statement.text).storeObject(slots[statement.variable]);
+            } else {
+                expression(statement.expression);
+                code.storeDouble(slots[statement.variable]);
+            }
+        }
+
+/* Jumps to target if the condition is false. Numbers are compared as javac compares doubles,
+with dcmpg for < and <= and dcmpl otherwise, so a NaN makes every comparison but != false. */
+
+        private void jumpUnless(Program.Condition condition, ClassWriter.Label target) {
+            int operator = condition.operator;
+            if (program.holdsText(condition.variable)) {
+                code.loadObject(slots[condition.variable]);
+                if (condition.text != null) {
+                    code.constant(condition.text);
+                } else {
+                    code.loadObject(slots[condition.right.variable]);
+                }
+                code.invoke(ClassWriter.INVOKEVIRTUAL, STRING, "compareTo", "(L" + STRING + ";)I", -1);
+            } else {
+                code.loadDouble(slots[condition.variable]);
+                expression(condition.right);
+                boolean less = operator == Token.lessThanSymbol || operator == Token.lessEqualSymbol;
+                code.op(less ? ClassWriter.DCMPG : ClassWriter.DCMPL, -3);
+            }
+            code.jump(falseBranch(operator), target);
+        }
+
+        /* The branch on the comparison result that is taken when operator does not hold. */
+        private static int falseBranch(int operator) {
+            switch (operator) {
+                case Token.equalSymbol:
+                    return ClassWriter.IFNE;
+                case Token.notEqualSymbol:
+                    return ClassWriter.IFEQ;
+                case Token.lessThanSymbol:
+                    return ClassWriter.IFGE;
+                case Token.lessEqualSymbol:
+                    return ClassWriter.IFGT;
+                case Token.greaterThanSymbol:
+                    return ClassWriter.IFLE;
+                default:
+                    return ClassWriter.IFLT;
+            }
+        }
+
+        private void expression(Program.Expression expression) {
+            switch (expression.kind) {
+                case Program.CONSTANT:
+                    code.constant(expression.value);
+                    return;
+                case Program.VARIABLE:
+                    code.loadDouble(slots[expression.variable]);
+                    return;
+                case Program.POWER_OF_TWO_REMAINDER:
+                    expression(expression.left);
+                    expression(expression.right);
+                    code.invoke(ClassWriter.INVOKESTATIC, "Program", "remainder", "(DD)D", -2);
+                    return;
+                default:
+                    expression(expression.left);
+                    expression(expression.right);
+                    code.op(arithmetic(expression.kind), -2);
+            }
+        }
+
+        private static int arithmetic(int operator) {
+            switch (operator) {
+                case Token.plusSymbol:
+                    return ClassWriter.DADD;
+                case Token.minusSymbol:
+                    return ClassWriter.DSUB;
+                case Token.timesSymbol:
+                    return ClassWriter.DMUL;
+                case Token.divideSymbol:
+                    return ClassWriter.DDIV;
+                case Token.modSymbol:
+                    return ClassWriter.DREM;
+                default:
+                    throw new IllegalStateException("unknown operator " + Token.getName(operator));
+            }
+        }
+    }
+}
@@ -0,0 +1,452 @@
+import java.io.*;
+import java.util.*;
+
+/* Just enough of the class file format (JVMS chapter 4) for BytecodeGenerate: a constant pool,
+methods with Code attributes, and the instructions that compiled programs use. Java 17 has no
+ClassFile API, so the bytes are written here directly.
+
+The class is version 52 (Java 8), so the verifier checks it against a StackMapTable. Code keeps
+that simple by having one frame for the whole method: every local is given its type once, at
+the start, and nothing is left on the operand stack across a jump, so each jump target gets the
+same full frame. Code counts the operand stack as instructions are added to find max_stack.
+
+Jumps take a 16-bit offset unless Code is told to use long jumps, which a method of 32 KB or
+more needs: then GOTO becomes GOTO_W and a conditional jump becomes the opposite condition
+jumping over a GOTO_W. */
+
+final class ClassWriter {
+
+    /* Opcodes used by Code. */
+    static final int DCONST_0 = 0x0e, DCONST_1 = 0x0f, LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14;
+    static final int DLOAD = 0x18, ALOAD = 0x19, DSTORE = 0x39, ASTORE = 0x3a;
+    static final int DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DREM = 0x73;
+    static final int DCMPL = 0x97, DCMPG = 0x98;
+    static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e, GOTO = 0xa7, GOTO_W = 0xc8;
+    static final int RETURN = 0xb1, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9;
+    private static final int WIDE = 0xc4;
+
+    static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    /** Thrown when a class would break a size limit of the class file format. */
+    static final class ClassTooLargeException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        ClassTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /* The verification type of a double local in a frame. */
+    static final Integer DOUBLE = 3;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassWriter(String name, String superName, String... interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    /* ---- constant pool ---- */
+
+    int utf8(String value) {
+        Integer index = entries.get("U" + value);
+        if (index == null) {
+            index = add("U" + value, 1, 1);
+            write(out -> out.writeUTF(value));
+        }
+        return index;
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, 7, 1, out -> out.writeShort(name));
+    }
+
+    int string(String value) {
+        int text = utf8(value);
+        return entry("S" + value, 8, 1, out -> out.writeShort(text));
+    }
+
+    int doubleConstant(double value) {
+        return entry("D" + Double.doubleToRawLongBits(value), 6, 2, out -> out.writeDouble(value));
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ' ' + descriptor, 12, 1, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry(tag + owner + '.' + name + descriptor, tag, 1, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int entry(String key, int tag, int slots, Body body) {
+        Integer index = entries.get(key);
+        if (index == null) {
+            index = add(key, tag, slots);
+            write(body);
+        }
+        return index;
+    }
+
+    private int add(String key, int tag, int slots) {
+        int index = poolCount;
+        if (index + slots > 0xFFFF) {
+            throw new ClassTooLargeException("constant pool overflow");
+        }
+        poolCount += slots;
+        entries.put(key, index);
+        write(out -> out.writeByte(tag));
+        return index;
+    }
+
+    private void write(Body body) {
+        try {
+            body.write(poolOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* ---- methods and the class ---- */
+
+/* Starts a method whose locals, from slot 0, have the given verification types (each DOUBLE
+covering two slots); a type that is a String is an object of that internal class name. */
+
+    Code method(int access, String name, String descriptor, Object... locals) {
+        return new Code(access, name, descriptor, locals);
+    }
+
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+            out.writeShort(poolCount);
+            poolOut.flush();
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces) {
+                out.writeShort(index);
+            }
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** A jump target: bound to a code offset once, jumped to from any number of places. */
+    static final class Label {
+        private int offset = -1;
+        /* The offset of each jump here, and 1 if it is a GOTO_W. */
+        private final List<int[]> jumps = new ArrayList<>();
+    }
+
+    /** The instructions of one method. */
+    final class Code {
+        private final int access;
+        private final String methodName;
+        private final int name;
+        private final int descriptor;
+        private final Object[] locals;
+        private final int maxLocals;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final TreeSet<Integer> frames = new TreeSet<>();
+        private final List<Label> labels = new ArrayList<>();
+        private int jumps;
+        private boolean longJumps;
+        private int stack;
+        private int maxStack;
+
+        private Code(int access, String name, String descriptor, Object[] locals) {
+            this.access = access;
+            this.methodName = name;
+            this.name = utf8(name);
+            this.descriptor = utf8(descriptor);
+            this.locals = locals;
+            int slots = 0;
+            for (Object local : locals) {
+                slots += local.equals(DOUBLE) ? 2 : 1;
+            }
+            this.maxLocals = slots;
+        }
+
+        /* Makes the jumps added from now on long ones, with 32-bit offsets. */
+        Code longJumps() {
+            longJumps = true;
+            return this;
+        }
+
+        /* The number of bytes of code so far. */
+        int size() {
+            return code.size();
+        }
+
+        /* An instruction without operands that changes the stack depth by delta. */
+        Code op(int opcode, int delta) {
+            code.write(opcode);
+            return adjust(delta);
+        }
+
+        Code loadDouble(int slot) {
+            return local(DLOAD, slot, 2);
+        }
+
+        Code storeDouble(int slot) {
+            return local(DSTORE, slot, -2);
+        }
+
+        Code loadObject(int slot) {
+            return local(ALOAD, slot, 1);
+        }
+
+        Code storeObject(int slot) {
+            return local(ASTORE, slot, -1);
+        }
+
+        private Code local(int opcode, int slot, int delta) {
+            if (slot > 0xFF) {
+                code.write(WIDE);
+                code.write(opcode);
+                u2(slot);
+            } else {
+                code.write(opcode);
+                code.write(slot);
+            }
+            return adjust(delta);
+        }
+
+        Code constant(double value) {
+            if (Double.doubleToRawLongBits(value) == 0) {
+                return op(DCONST_0, 2);
+            }
+            if (value == 1) {
+                return op(DCONST_1, 2);
+            }
+            code.write(LDC2_W);
+            u2(doubleConstant(value));
+            return adjust(2);
+        }
+
+        Code constant(String value) {
+            int index = string(value);
+            if (index <= 0xFF) {
+                code.write(LDC);
+                code.write(index);
+            } else {
+                code.write(LDC_W);
+                u2(index);
+            }
+            return adjust(1);
+        }
+
+/* A method call; delta is its effect on the stack: the result's size less the receiver's and
+arguments'. */
+
+        Code invoke(int opcode, String owner, String methodName, String methodDescriptor, int delta) {
+            code.write(opcode);
+            if (opcode == INVOKEINTERFACE) {
+                u2(interfaceMethodRef(owner, methodName, methodDescriptor));
+                code.write(argumentSlots(methodDescriptor) + 1);
+                code.write(0);
+            } else {
+                u2(methodRef(owner, methodName, methodDescriptor));
+            }
+            return adjust(delta);
+        }
+
+/* A conditional jump (popping its int operand) or GOTO, to a label bound before or after. A long
+conditional jump skips the GOTO_W after it when its condition fails, so the instruction after
+that is a jump target too, and the operand stack must be empty there. */
+
+        Code jump(int opcode, Label target) {
+            if (opcode != GOTO) {
+                adjust(-1);
+            }
+            if (!longJumps) {
+                target.jumps.add(new int[] {code.size(), 0});
+                code.write(opcode);
+                u2(0);
+            } else {
+                if (opcode != GOTO) {
+                    if (stack != 0) {
+                        throw new IllegalStateException("operand stack not empty at a jump target");
+                    }
+                    code.write(((opcode - IFEQ) ^ 1) + IFEQ);
+                    u2(8);
+                }
+                target.jumps.add(new int[] {code.size(), 1});
+                code.write(GOTO_W);
+                u2(0);
+                u2(0);
+                if (opcode != GOTO) {
+                    frames.add(code.size());
+                }
+            }
+            jumps++;
+            return this;
+        }
+
+        /* Binds label here. The operand stack must be empty, as it is at every jump. */
+        Code bind(Label label) {
+            if (stack != 0) {
+                throw new IllegalStateException("operand stack not empty at a jump target");
+            }
+            if (label.offset >= 0) {
+                throw new IllegalStateException("label bound twice");
+            }
+            label.offset = code.size();
+            frames.add(label.offset);
+            labels.add(label);
+            return this;
+        }
+
+        private Code adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+            return this;
+        }
+
+        private void u2(int value) {
+            code.write(value >> 8);
+            code.write(value);
+        }
+
+        private int argumentSlots(String methodDescriptor) {
+            int slots = 0;
+            for (int i = 1; methodDescriptor.charAt(i) != ')'; i++) {
+                char c = methodDescriptor.charAt(i);
+                if (c == 'L') {
+                    i = methodDescriptor.indexOf(';', i);
+                }
+                slots += c == 'D' || c == 'J' ? 2 : 1;
+            }
+            return slots;
+        }
+
+/* Patches the jumps and adds the method to the class. Throws ClassTooLargeException if the
+method is over the 64 KB of code the class file format allows, and IllegalStateException if a
+jump without longJumps is more than 32 KB long. */
+
+        void end() {
+            byte[] bytes = code.toByteArray();
+            if (bytes.length > 0xFFFF) {
+                throw new ClassTooLargeException("method " + methodName + " is " + bytes.length + " bytes, over the 65535 the JVM allows");
+            }
+            for (Label label : labels) {
+                jumps -= label.jumps.size();
+                for (int[] jump : label.jumps) {
+                    int at = jump[0];
+                    int distance = label.offset - at;
+                    if (jump[1] == 1) {
+                        bytes[at + 1] = (byte) (distance >> 24);
+                        bytes[at + 2] = (byte) (distance >> 16);
+                        at += 2;
+                    } else if (distance != (short) distance) {
+                        throw new IllegalStateException("jump of " + distance + " bytes in " + methodName + " is too long");
+                    }
+                    bytes[at + 1] = (byte) (distance >> 8);
+                    bytes[at + 2] = (byte) distance;
+                }
+            }
+            if (jumps != 0) {
+                throw new IllegalStateException("jump to a label that was never bound");
+            }
+            try {
+                ByteArrayOutputStream method = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(method);
+                out.writeShort(access);
+                out.writeShort(name);
+                out.writeShort(descriptor);
+                out.writeShort(1);
+
+                byte[] frameTable = stackMapTable();
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + bytes.length + (frameTable == null ? 0 : 6 + frameTable.length));
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.writeShort(0);
+                if (frameTable == null) {
+                    out.writeShort(0);
+                } else {
+                    out.writeShort(1);
+                    out.writeShort(utf8("StackMapTable"));
+                    out.writeInt(frameTable.length);
+                    out.write(frameTable);
+                }
+                methods.add(method.toByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /* A full frame, with every local and an empty stack, at each jump target. */
+        private byte[] stackMapTable() throws IOException {
+            if (frames.isEmpty()) {
+                return null;
+            }
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(table);
+            out.writeShort(frames.size());
+            int previous = -1;
+            for (int offset : frames) {
+                out.writeByte(255);
+                out.writeShort(offset - previous - 1);
+                previous = offset;
+                out.writeShort(locals.length);
+                for (Object local : locals) {
+                    if (local instanceof String) {
+                        out.writeByte(7);
+                        out.writeShort(classRef((String) local));
+                    } else {
+                        out.writeByte((Integer) local);
+                    }
+                }
+                out.writeShort(0);
+            }
+            return table.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/* An on-disk cache of CompileResults, so that compiling a file whose content has been compiled
+before returns the stored trace and res.txt entry without lexing or parsing it.
+
+Entries are keyed by the SHA-256 of the parser version and the source bytes. The parser version
+is itself a digest: of the class files of the compiler (so rebuilding a changed parser
+invalidates every entry without anyone bumping a number) and of the system properties that
+change the output. Each entry is one file named by its key, written to a temporary file first
+and renamed into place, so concurrent compiles and interrupted runs never leave a torn entry;
+an unreadable entry counts as a miss and is replaced. Nothing is ever evicted: delete the
+directory to empty the cache. */
+
+public class CompileCache {
+
+    private static final int MAGIC = 0x3132CAC0;
+
+    /* The classes whose code decides what a compile prints. */
+    private static final String[] COMPILER_CLASSES = {
+        "AbstractSyntaxAnalyser", "SyntaxAnalyser", "TableDrivenParser", "Grammar", "AbstractGenerate",
+        "Generate", "BufferedGenerate", "SilentGenerate", "ParseFailure", "CompilationException",
+        "Nonterminal", "Token", "LexicalAnalyser", "ArrayLexicalAnalyser", "StreamLexicalAnalyser",
+        "ReservedWords", "SymbolTable", "IdentifierToken", "CompileResult"
+    };
+
+    /* The system properties that change what a compile prints. */
+    private static final String[] OUTPUT_PROPERTIES = {"trace", "parser", "parser.recover", "lexer"};
+
+    private static CompileCache configured;
+
+    private final Path directory;
+    private final byte[] version;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CompileCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.version = version();
+    }
+
+/* The cache in the directory named by the "compile.cache" system property, shared by every
+caller in this JVM, or null if the property is not set. */
+
+    public static synchronized CompileCache fromProperties() throws IOException {
+        String directory = System.getProperty("compile.cache");
+        if (directory == null) {
+            return null;
+        }
+        if (configured == null || !configured.directory.equals(Paths.get(directory))) {
+            configured = new CompileCache(Paths.get(directory));
+        }
+        return configured;
+    }
+
+/* Returns the result of compiling fileName, from the cache if its content has been compiled
+by this parser version before, otherwise by compiling it and storing the result. */
+
+    public CompileResult compile(String fileName) throws IOException {
+        byte[] source = Files.readAllBytes(Paths.get(fileName));
+        Path entry = directory.resolve(key(source));
+        CompileResult result = read(fileName, entry);
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        result = CompileResult.compile(fileName, source);
+        /* The provided LexicalAnalyser reads the file itself, so the file may have changed since
+        it was hashed; the result is only stored if it still holds the hashed bytes. */
+        if (Arrays.equals(source, Files.readAllBytes(Paths.get(fileName)))) {
+            write(entry, result);
+        }
+        return result;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public String statistics() {
+        return "compile cache " + directory + ": " + hits() + " hits, " + misses() + " misses";
+    }
+
+    private String key(byte[] source) {
+        MessageDigest digest = sha256();
+        digest.update(version);
+        digest.update(source);
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    private static CompileResult read(String fileName, Path entry) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(entry);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            if (in.getInt() != MAGIC) {
+                return null;
+            }
+            byte[] trace = nextBytes(in);
+            byte[] result = nextBytes(in);
+            return in.hasRemaining() ? null : new CompileResult(fileName, trace, result);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static byte[] nextBytes(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private void write(Path entry, CompileResult result) throws IOException {
+        Path temporary = Files.createTempFile(directory, "entry-", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(result.trace.length);
+                out.write(result.trace);
+                out.writeInt(result.result.length);
+                out.write(result.result);
+            }
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static byte[] version() throws IOException {
+        MessageDigest digest = sha256();
+        ClassLoader loader = CompileCache.class.getClassLoader();
+        for (String name : COMPILER_CLASSES) {
+            digest.update(name.getBytes("UTF-8"));
+            try (InputStream in = loader.getResourceAsStream(name + ".class")) {
+                if (in != null) {
+                    digest.update(in.readAllBytes());
+                }
+            }
+        }
+        for (String property : OUTPUT_PROPERTIES) {
+            digest.update((property + "=" + System.getProperty(property) + "\n").getBytes("UTF-8"));
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("every Java platform has SHA-256", e);
+        }
+    }
+}
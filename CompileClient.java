@@ -0,0 +1,80 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/* Thin client for CompileServer and a drop-in replacement for "java Compile": it takes the same
+arguments as ParallelCompile (none walks Programs Folder like Compile), sends the files to the
+server and prints the replies exactly as Compile prints its output, writing res.txt the same
+way. When no server is listening it compiles the files itself, so it is safe to use whether or
+not one was started. The makefile's run target becomes
+
+    $(JAVA) CompileClient > output.txt
+
+and "java CompileClient -stop" shuts the server down, or says so when none is listening. */
+
+public class CompileClient {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 1 && args[0].equals("-stop")) {
+            try (SocketChannel channel = connect()) {
+                DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+                out.writeInt(CompileServer.STOP);
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("no compile server is listening on " + CompileServer.socketPath());
+            }
+            return;
+        }
+
+        List<String> files = ParallelCompile.inputs(args);
+        System.out.println("312START");
+        try (PrintStream res = new PrintStream(new FileOutputStream("res.txt"))) {
+            SocketChannel channel;
+            try {
+                channel = connect();
+            } catch (IOException e) {
+                channel = null;
+            }
+            if (channel == null) {
+                ParallelCompile.compileAll(files, System.out, res);
+            } else {
+                try (SocketChannel server = channel) {
+                    compileRemotely(server, files, System.out, res);
+                }
+            }
+        }
+        ParallelCompile.finish(System.out, args, files);
+    }
+
+    private static SocketChannel connect() throws IOException {
+        return SocketChannel.open(UnixDomainSocketAddress.of(CompileServer.socketPath()));
+    }
+
+/* Sends the files to the server and writes each result to out and res as it comes back. */
+
+    public static void compileRemotely(SocketChannel server, List<String> files, PrintStream out, PrintStream res) throws IOException {
+        DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(server)));
+        request.writeInt(files.size());
+        for (String file : files) {
+            request.writeUTF(new File(file).getAbsolutePath());
+        }
+        request.flush();
+
+        DataInputStream reply = new DataInputStream(new BufferedInputStream(Channels.newInputStream(server)));
+        for (String file : files) {
+            if (!reply.readBoolean()) {
+                throw new IOException(reply.readUTF());
+            }
+            byte[] trace = readBytes(reply);
+            byte[] result = readBytes(reply);
+            new CompileResult(file, trace, result).writeTo(out, res);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
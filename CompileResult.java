@@ -0,0 +1,52 @@
+import java.io.*;
+
+/* The output of compiling one file, held in memory: the trace that Compile would have printed
+after the file's 312FILE line and the entry it would have written to res.txt. */
+
+public class CompileResult {
+
+    public final String fileName;
+    public final byte[] trace;
+    public final byte[] result;
+
+    public CompileResult(String fileName, byte[] trace, byte[] result) {
+        this.fileName = fileName;
+        this.trace = trace;
+        this.result = result;
+    }
+
+/* Compiles one file in its own session: a new SyntaxAnalyser and generator writing into
+private buffers, so any number of these can run at once in one JVM. */
+
+    public static CompileResult compile(String fileName) throws IOException {
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (PrintStream traceStream = new PrintStream(trace); PrintStream resultStream = new PrintStream(result)) {
+            SyntaxAnalyser syn = new SyntaxAnalyser(fileName, Generate.fromProperties(traceStream));
+            syn.parse(resultStream);
+        }
+        return new CompileResult(fileName, trace.toByteArray(), result.toByteArray());
+    }
+
+/* Compiles source bytes already read from fileName, e.g. by CompileCache, with the same scanner
+compile(fileName) would use (see SyntaxAnalyser). */
+
+    public static CompileResult compile(String fileName, byte[] source) throws IOException {
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (PrintStream traceStream = new PrintStream(trace); PrintStream resultStream = new PrintStream(result)) {
+            SyntaxAnalyser syn = new SyntaxAnalyser(fileName, source, Generate.fromProperties(traceStream));
+            syn.parse(resultStream);
+        }
+        return new CompileResult(fileName, trace.toByteArray(), result.toByteArray());
+    }
+
+/* Writes this file's part of the output exactly as Compile prints it. */
+
+    public void writeTo(PrintStream out, PrintStream res) {
+        out.println();
+        out.println("312FILE " + fileName);
+        out.write(trace, 0, trace.length);
+        res.write(result, 0, result.length);
+    }
+}
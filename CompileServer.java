@@ -0,0 +1,125 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/* A resident compiler, so a build step does not pay for starting a JVM and running the parser
+cold every time. It listens on a Unix domain socket and compiles the files each CompileClient
+asks for, each in its own session (see CompileResult.compile), so the classes stay loaded and
+the JIT-compiled parser stays warm from one request to the next. Start it once:
+
+    java CompileServer &              (the trace, parser and lexer properties apply as usual)
+    java CompileClient > output.txt   (instead of java Compile > output.txt)
+    java CompileClient -stop
+
+The socket is the "compile.socket" system property, by default compile-312.sock in the
+temporary directory. Each connection is handled on its own virtual thread when the JVM has
+them (Java 21 and later) and on a pooled platform thread otherwise.
+
+A request is the number of files followed by their absolute paths; -1 files asks the server to
+stop. The reply gives, for each file in order and as soon as it is compiled, true followed by
+the trace and res.txt entry as length-prefixed bytes, or false and whatever stopped it, an
+IOException or anything else the compile threw (a StackOverflowError on a deeply nested program,
+say), so one bad file does not drop the connection in the middle of a reply. */
+
+public class CompileServer {
+
+    static final int STOP = -1;
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers = newWorkers();
+
+    public CompileServer(Path socket) throws IOException {
+        this.socket = socket;
+        Files.deleteIfExists(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+    }
+
+    public static void main(String[] args) throws IOException {
+        CompileServer compileServer = new CompileServer(socketPath());
+        System.err.println("compile server listening on " + compileServer.socket);
+        compileServer.serve();
+    }
+
+    /* Where the server listens and the client connects. */
+    static Path socketPath() {
+        String path = System.getProperty("compile.socket");
+        if (path == null) {
+            return Paths.get(System.getProperty("java.io.tmpdir"), "compile-312.sock");
+        }
+        return Paths.get(path);
+    }
+
+/* Accepts connections until a client asks the server to stop. */
+
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                }
+                workers.execute(() -> handle(client));
+            }
+        } finally {
+            workers.shutdown();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            int count = in.readInt();
+            if (count == STOP) {
+                server.close();
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                CompileResult result;
+                try {
+                    result = CompileResult.compile(path);
+                } catch (IOException | RuntimeException | Error e) {
+                    out.writeBoolean(false);
+                    out.writeUTF(e.toString());
+                    out.flush();
+                    continue;
+                }
+                out.writeBoolean(true);
+                writeBytes(out, result.trace);
+                writeBytes(out, result.result);
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("compile server: " + e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+/* A virtual thread per connection where Executors.newVirtualThreadPerTaskExecutor exists (it
+is looked up reflectively so this still compiles and runs on Java 17), otherwise a cached pool
+of daemon threads. */
+
+    private static ExecutorService newWorkers() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "compile-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
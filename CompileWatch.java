@@ -0,0 +1,93 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* Watch mode: compiles Programs Folder like Compile, writing output.txt and res.txt, and then
+keeps watching the folder with a WatchService. When files change it compiles only those, takes
+every other file's result from memory, and rewrites output.txt and res.txt exactly as a fresh
+Compile would, printing a line per recompiled file. Stop it with Ctrl-C.
+
+    java CompileWatch [-Dcompile.cache=dir]
+
+Results also go through a CompileCache (in the "compile.cache" directory, by default
+.compile-cache), so a file saved without changes, or changed back to something compiled
+before, is not parsed again, and a restarted watcher starts from the cache too. Editors often
+save in several steps, so changes are collected until the folder has been quiet for a moment. */
+
+public class CompileWatch {
+
+    private static final long QUIET_MILLIS = 100;
+
+    private final Path folder = Paths.get("Programs Folder");
+    private final CompileCache cache;
+    private final Map<String, CompileResult> results = new HashMap<>();
+
+    public CompileWatch(CompileCache cache) {
+        this.cache = cache;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        CompileCache cache = CompileCache.fromProperties();
+        if (cache == null) {
+            cache = new CompileCache(Paths.get(".compile-cache"));
+        }
+        new CompileWatch(cache).watch();
+    }
+
+    public void watch() throws IOException, InterruptedException {
+        try (WatchService watcher = folder.getFileSystem().newWatchService()) {
+            folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            update(null);
+            System.out.println("watching " + folder + "; " + cache.statistics());
+            while (true) {
+                WatchKey key = watcher.take();
+                Set<String> changed = new TreeSet<>();
+                boolean overflow = false;
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else {
+                            changed.add(folder.resolve((Path) event.context()).toString());
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.out.println(folder + " is no longer accessible");
+                        return;
+                    }
+                    key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                update(overflow ? null : changed);
+            }
+        }
+    }
+
+/* Recompiles the changed files (all of them if changed is null) and any program not compiled
+yet, forgets the ones that are gone, and rewrites the output files. */
+
+    private void update(Set<String> changed) throws IOException {
+        List<String> files = ParallelCompile.inputs(new String[0]);
+        results.keySet().retainAll(files);
+        for (String file : files) {
+            if (changed == null || changed.contains(file) || !results.containsKey(file)) {
+                long misses = cache.misses();
+                CompileResult result = cache.compile(file);
+                results.put(file, result);
+                if (changed != null) {
+                    System.out.println((cache.misses() > misses ? "compiled " : "cached ") + file
+                            + (result.result.length == 0 ? "" : " (Compilation Exception)"));
+                }
+            }
+        }
+        try (PrintStream out = new PrintStream(new FileOutputStream("output.txt"));
+                PrintStream res = new PrintStream(new FileOutputStream("res.txt"))) {
+            out.println("312START");
+            for (String file : files) {
+                results.get(file).writeTo(out, res);
+            }
+            ParallelCompile.finish(out, new String[0], files);
+        }
+    }
+}
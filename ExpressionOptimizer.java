@@ -0,0 +1,365 @@
+import java.util.*;
+
+/* Rewrites a Program's expressions so they cost less to run, for the Interpreter and for
+BytecodeGenerate alike, without changing a single value the program computes:
+
+  - constant folding: an operation whose operands are both constants, such as 2 * 3 in
+    2 * 3 + y, is done once here, and x * 1, 1 * x, x / 1 and x - 0 become x;
+  - strength reduction: x * 2 and 2 * x become x + x for a variable x, x / 2^k becomes
+    x * 2^-k, and x % 2^k becomes Program.remainder, which needs no division;
+  - loop-invariant code motion: an operation in a while, do-until or for loop whose variables
+    the loop never assigns is computed once into a new variable before the loop, and an
+    operation repeated in a loop is computed once.
+
+Values are doubles, so operations are never reordered: (x - 2) + 3 is not x + 1 for every x, so
+only operations whose operands are constants in the order the program computes them are
+folded, and - and / keep the left-to-right reading of a - b + c - d. Every rewrite above gives
+the same double as the original, including the sign of zero, infinities and NaN. Computing an
+invariant before a loop that then runs no passes is harmless, as the operations have no effects.
+
+An optimizer counts what it did to the programs it has optimized; report() sums it up. */
+
+public class ExpressionOptimizer {
+
+    private int before;
+    private int after;
+    private int folded;
+    private int reduced;
+    private int hoisted;
+
+    /* Being built for the program being optimized. */
+    private List<String> names;
+    private List<Boolean> texts;
+    private int originalCount;
+
+    public Program optimize(Program program) {
+        names = new ArrayList<>();
+        texts = new ArrayList<>();
+        originalCount = program.variableCount();
+        for (int variable = 0; variable < originalCount; variable++) {
+            names.add(program.name(variable));
+            texts.add(program.holdsText(variable));
+        }
+        before += operations(program.statements());
+        List<Program.Statement> statements = block(program.statements());
+        after += operations(statements);
+
+        boolean[] holdsText = new boolean[texts.size()];
+        for (int variable = 0; variable < holdsText.length; variable++) {
+            holdsText[variable] = texts.get(variable);
+        }
+        return new Program(names.toArray(new String[0]), holdsText, statements);
+    }
+
+    /* Arithmetic operations in the programs before and after optimizing. */
+    public int operationsBefore() {
+        return before;
+    }
+
+    public int operationsAfter() {
+        return after;
+    }
+
+    /* Operations folded away. */
+    public int folded() {
+        return folded;
+    }
+
+    /* Operations replaced by cheaper ones. */
+    public int reduced() {
+        return reduced;
+    }
+
+    /* Operations taken out of loops, so done once rather than on every pass. */
+    public int hoisted() {
+        return hoisted;
+    }
+
+    public String report() {
+        return (folded + hoisted) + " operations saved: " + folded + " folded, " + hoisted
+                + " moved out of loops, and " + reduced + " made cheaper (" + before + " operations, now " + after + ")";
+    }
+
+    /* ---- statements ---- */
+
+    private List<Program.Statement> block(List<Program.Statement> statements) {
+        List<Program.Statement> result = new ArrayList<>(statements.size());
+        for (Program.Statement statement : statements) {
+            Program.Statement copy = new Program.Statement(statement.kind, statement.line);
+            switch (statement.kind) {
+                case Program.ASSIGN:
+                    copy = assignment(statement);
+                    break;
+                case Program.IF:
+                    copy.condition = condition(statement.condition);
+                    copy.body = block(statement.body);
+                    copy.otherwise = block(statement.otherwise);
+                    break;
+                case Program.FOR:
+                    copy.initial = assignment(statement.initial);
+                    copy.step = assignment(statement.step);
+                    loop(statement, copy, result);
+                    break;
+                case Program.WHILE:
+                case Program.UNTIL:
+                    loop(statement, copy, result);
+                    break;
+                default:
+                    copy.arguments = statement.arguments;
+                    break;
+            }
+            result.add(copy);
+        }
+        return result;
+    }
+
+    /* Copies a loop's condition and body into copy and adds its hoisted invariants to result. */
+    private void loop(Program.Statement statement, Program.Statement copy, List<Program.Statement> result) {
+        copy.condition = condition(statement.condition);
+        copy.body = block(statement.body);
+        result.addAll(hoist(copy));
+    }
+
+    private Program.Statement assignment(Program.Statement statement) {
+        Program.Statement copy = new Program.Statement(Program.ASSIGN, statement.line);
+        copy.variable = statement.variable;
+        copy.text = statement.text;
+        copy.expression = statement.expression == null ? null : expression(statement.expression);
+        return copy;
+    }
+
+    private Program.Condition condition(Program.Condition condition) {
+        Program.Condition copy = new Program.Condition(condition.line, condition.variable, condition.operator);
+        copy.text = condition.text;
+        copy.right = condition.right == null ? null : expression(condition.right);
+        return copy;
+    }
+
+    /* ---- folding and strength reduction ---- */
+
+    private Program.Expression expression(Program.Expression expression) {
+        if (expression.isLeaf()) {
+            return expression;
+        }
+        Program.Expression left = expression(expression.left);
+        Program.Expression right = expression(expression.right);
+        int operator = expression.kind;
+        if (left.kind == Program.CONSTANT && right.kind == Program.CONSTANT) {
+            folded++;
+            return Program.Expression.constant(Interpreter.evaluate(Program.Expression.binary(operator, left, right), null));
+        }
+        if (isConstant(right, 1) && (operator == Token.timesSymbol || operator == Token.divideSymbol)
+                || isConstant(left, 1) && operator == Token.timesSymbol) {
+            folded++;
+            return isConstant(right, 1) ? left : right;
+        }
+        if (operator == Token.minusSymbol && right.kind == Program.CONSTANT && Double.doubleToRawLongBits(right.value) == 0) {
+            folded++;
+            return left;
+        }
+        if (operator == Token.timesSymbol && (isConstant(right, 2) && left.kind == Program.VARIABLE
+                || isConstant(left, 2) && right.kind == Program.VARIABLE)) {
+            reduced++;
+            Program.Expression variable = left.kind == Program.VARIABLE ? left : right;
+            return Program.Expression.binary(Token.plusSymbol, variable, variable);
+        }
+        if (operator == Token.divideSymbol && powerOfTwo(right, -1022, 1022)) {
+            reduced++;
+            return Program.Expression.binary(Token.timesSymbol, left, Program.Expression.constant(1 / right.value));
+        }
+        if (operator == Token.modSymbol && powerOfTwo(right, 0, 62)) {
+            reduced++;
+            return Program.Expression.binary(Program.POWER_OF_TWO_REMAINDER, left, right);
+        }
+        return left == expression.left && right == expression.right ? expression : Program.Expression.binary(operator, left, right);
+    }
+
+    private static boolean isConstant(Program.Expression expression, double value) {
+        return expression.kind == Program.CONSTANT && expression.value == value;
+    }
+
+    /* True if expression is the constant 2^k for some k from min to max. */
+    private static boolean powerOfTwo(Program.Expression expression, int min, int max) {
+        if (expression.kind != Program.CONSTANT || !(expression.value > 0)) {
+            return false;
+        }
+        int exponent = Math.getExponent(expression.value);
+        return exponent >= min && exponent <= max && expression.value == Math.scalb(1.0, exponent);
+    }
+
+    /* ---- loop-invariant code motion ---- */
+
+/* Takes the invariant operations out of a loop whose body has already been optimized, and
+returns the assignments to new variables that must come before it. Loops inside it have done
+the same, so their own invariants are already assignments in this loop's body: those whose
+operations are invariant here too move out again, whole. */
+
+    private List<Program.Statement> hoist(Program.Statement loop) {
+        BitSet assigned = new BitSet();
+        if (loop.kind == Program.FOR) {
+            assigned.set(loop.initial.variable);
+            assigned.set(loop.step.variable);
+        }
+        assigned(loop.body, assigned);
+
+        Hoisting hoisting = new Hoisting(loop.line, assigned);
+        loop.condition.right = hoisting.expression(loop.condition.right);
+        if (loop.kind == Program.FOR && loop.step.expression != null) {
+            loop.step.expression = hoisting.expression(loop.step.expression);
+        }
+        loop.body = hoisting.block(loop.body);
+        return hoisting.before;
+    }
+
+    /* Adds every variable statements assign, in loops and branches too, to assigned. */
+    private static void assigned(List<Program.Statement> statements, BitSet assigned) {
+        for (Program.Statement statement : statements) {
+            switch (statement.kind) {
+                case Program.ASSIGN:
+                    assigned.set(statement.variable);
+                    break;
+                case Program.GET:
+                    for (int variable : statement.arguments) {
+                        assigned.set(variable);
+                    }
+                    break;
+                case Program.PUT:
+                    break;
+                case Program.FOR:
+                    assigned.set(statement.initial.variable);
+                    assigned.set(statement.step.variable);
+                    assigned(statement.body, assigned);
+                    break;
+                default:
+                    assigned(statement.body, assigned);
+                    if (statement.otherwise != null) {
+                        assigned(statement.otherwise, assigned);
+                    }
+            }
+        }
+    }
+
+    /** The invariants taken out of one loop. */
+    private final class Hoisting {
+        private final int line;
+        private final BitSet assigned;
+        private final Map<String, Integer> temporaries = new HashMap<>();
+        private final List<Program.Statement> before = new ArrayList<>();
+
+        Hoisting(int line, BitSet assigned) {
+            this.line = line;
+            this.assigned = assigned;
+        }
+
+        /* Rewrites the assignments and conditions of statements, and the branches of ifs, but
+        not the loops in them, which have had their invariants taken out already. */
+        List<Program.Statement> block(List<Program.Statement> statements) {
+            List<Program.Statement> result = new ArrayList<>(statements.size());
+            for (Program.Statement statement : statements) {
+                switch (statement.kind) {
+                    case Program.ASSIGN:
+                        if (statement.variable >= originalCount && statement.expression != null && invariant(statement.expression)) {
+                            before.add(statement);
+                            continue;
+                        }
+                        if (statement.expression != null && !statement.expression.isLeaf()) {
+                            statement.expression = invariant(statement.expression) ? temporary(statement.expression) : expression(statement.expression);
+                        }
+                        break;
+                    case Program.IF:
+                        statement.condition.right = expression(statement.condition.right);
+                        statement.body = block(statement.body);
+                        statement.otherwise = block(statement.otherwise);
+                        break;
+                    default:
+                        break;
+                }
+                result.add(statement);
+            }
+            return result;
+        }
+
+        /* Replaces the largest invariant operations in expression by new variables. */
+        Program.Expression expression(Program.Expression expression) {
+            if (expression == null || expression.isLeaf()) {
+                return expression;
+            }
+            if (invariant(expression)) {
+                return temporary(expression);
+            }
+            Program.Expression left = expression(expression.left);
+            Program.Expression right = expression(expression.right);
+            return left == expression.left && right == expression.right ? expression : Program.Expression.binary(expression.kind, left, right);
+        }
+
+        private boolean invariant(Program.Expression expression) {
+            switch (expression.kind) {
+                case Program.CONSTANT:
+                    return true;
+                case Program.VARIABLE:
+                    return !assigned.get(expression.variable);
+                default:
+                    return invariant(expression.left) && invariant(expression.right);
+            }
+        }
+
+        /* The variable holding expression, computed before the loop; the same operation hoisted
+        twice shares one. */
+        private Program.Expression temporary(Program.Expression expression) {
+            String key = key(expression);
+            Integer variable = temporaries.get(key);
+            if (variable == null) {
+                variable = names.size();
+                names.add("$" + variable);
+                texts.add(false);
+                temporaries.put(key, variable);
+                Program.Statement assignment = new Program.Statement(Program.ASSIGN, line);
+                assignment.variable = variable;
+                assignment.expression = expression;
+                before.add(assignment);
+            }
+            hoisted += operations(expression);
+            return Program.Expression.variable(variable);
+        }
+    }
+
+    private static String key(Program.Expression expression) {
+        switch (expression.kind) {
+            case Program.CONSTANT:
+                return Double.toString(expression.value);
+            case Program.VARIABLE:
+                return "$" + expression.variable;
+            default:
+                return "(" + key(expression.left) + " " + expression.kind + " " + key(expression.right) + ")";
+        }
+    }
+
+    /* ---- counting ---- */
+
+    private static int operations(List<Program.Statement> statements) {
+        int count = 0;
+        for (Program.Statement statement : statements) {
+            if (statement.kind == Program.ASSIGN) {
+                count += operations(statement.expression);
+                continue;
+            }
+            if (statement.condition != null) {
+                count += operations(statement.condition.right);
+            }
+            if (statement.kind == Program.FOR) {
+                count += operations(statement.initial.expression) + operations(statement.step.expression);
+            }
+            if (statement.body != null) {
+                count += operations(statement.body);
+            }
+            if (statement.otherwise != null) {
+                count += operations(statement.otherwise);
+            }
+        }
+        return count;
+    }
+
+    private static int operations(Program.Expression expression) {
+        return expression == null || expression.isLeaf() ? 0 : 1 + operations(expression.left) + operations(expression.right);
+    }
+}
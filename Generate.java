@@ -2,10 +2,155 @@ import java.io.*;
 
 public class Generate extends AbstractGenerate {
 
+    private static final ParseListener[] NO_LISTENERS = new ParseListener[0];
+
+    private final PrintStream out;
+    private final boolean trace;
+    private final ParseListener[] listeners;
+    private final StringBuilder line = new StringBuilder(64);
+
+    public Generate() {
+        this(System.out, true, NO_LISTENERS);
+    }
+
+/* trace turns the 312 text output on or off; the listeners receive every event either way. */
+
+    public Generate(boolean trace, ParseListener... listeners) {
+        this(System.out, trace, listeners);
+    }
+
+/* Prints the trace to out rather than System.out, so several sessions can run side by side. */
+
+    public Generate(PrintStream out, boolean trace, ParseListener... listeners) {
+        this.out = out;
+        this.trace = trace;
+        this.listeners = listeners.clone();
+    }
+
+/* Picks the generator named by the "trace" system property: "print" (the default) prints each
+event, "buffered" uses a BufferedGenerate on the same stream and "none" validates silently.
+With "parser.metrics" set, the generator also feeds a ParseMetrics session. */
+
+    public static Generate fromProperties() {
+        return fromProperties(System.out);
+    }
+
+    public static Generate fromProperties(PrintStream out) {
+        ParseListener[] listeners = ParseMetrics.enabled() ? new ParseListener[] {ParseMetrics.global().session()} : NO_LISTENERS;
+        switch (System.getProperty("trace", "print")) {
+            case "buffered":
+                return new BufferedGenerate(out, listeners);
+            case "none":
+                return listeners.length == 0 ? new SilentGenerate() : new Generate(out, false, listeners);
+            default:
+                return new Generate(out, true, listeners);
+        }
+    }
+
+/* The table the scanner SyntaxAnalyser opens should intern identifiers in, or null to let it
+keep its own. A Generate whose listeners number names, like BytecodeGenerate's SyntaxTree,
+returns their table, so the ids the IdentifierTokens carry are used as they are. */
+
+    public SymbolTable symbols() {
+        return null;
+    }
+
+    /* The events the parser raises; each prints the trace line if tracing and tells the listeners. */
+
+    public void commenceNonterminal(int nonterminal) {
+        if (trace) {
+            commenceNonterminal(Nonterminal.getName(nonterminal));
+        }
+        for (ParseListener listener : listeners) {
+            listener.commenceNonterminal(nonterminal);
+        }
+    }
+
+    public void finishNonterminal(int nonterminal) {
+        if (trace) {
+            finishNonterminal(Nonterminal.getName(nonterminal));
+        }
+        for (ParseListener listener : listeners) {
+            listener.finishNonterminal(nonterminal);
+        }
+    }
+
+    public void terminalAccepted(Token token) {
+        if (trace) {
+            insertTerminal(token);
+        }
+        for (ParseListener listener : listeners) {
+            listener.insertTerminal(token);
+        }
+    }
+
+/* Called by SyntaxAnalyser.parse when the parse is over, after an error as well, so listeners
+can let go of what they kept for it. */
+
+    public void parseEnded() {
+        for (ParseListener listener : listeners) {
+            listener.parseEnded();
+        }
+    }
+
+/* The 312 trace lines, in the same format as AbstractGenerate but written to out. Each line is
+built in one reused StringBuilder rather than with string concatenation, which also spares a
+one-shot run the cost of linking a concatenation call site per line shape at startup. Like the
+events above they print nothing unless tracing, which is also what keeps them safe to call on a
+SilentGenerate, whose out is null. */
+
+    @Override
+    public void insertTerminal(Token token) {
+        if (!trace) {
+            return;
+        }
+        StringBuilder line = startLine("312TOKEN ").append(Token.getName(token.symbol));
+
+        if ((token.symbol == Token.identifier) || (token.symbol == Token.numberConstant) || (token.symbol == Token.stringConstant))
+            line.append(" '").append(token.text).append('\'');
+
+        line.append(" on line ").append(token.lineNumber);
+
+        out.println(line);
+    }
+
+    @Override
+    public void commenceNonterminal(String name) {
+        if (trace) {
+            out.println(startLine("312BEGIN ").append(name));
+        }
+    }
+
+    @Override
+    public void finishNonterminal(String name) {
+        if (trace) {
+            out.println(startLine("312END ").append(name));
+        }
+    }
+
+    private StringBuilder startLine(String prefix) {
+        line.setLength(0);
+        return line.append(prefix);
+    }
+
+    @Override
+    public void reportSuccess() {
+        if (trace) {
+            out.println("312SUCCESS");
+        }
+    }
+
     @Override
     public void reportError(Token token, String explanatoryMessage) throws CompilationException {
-        String errorMessage = "Error at line " + token.lineNumber + ": " + explanatoryMessage + " (found '" + token.text + "')";
-        System.out.println(errorMessage);
-        throw new CompilationException(errorMessage);
+        String errorMessage = errorMessage(token, explanatoryMessage);
+        if (trace) {
+            out.println(errorMessage);
+        }
+        throw new ParseFailure(errorMessage);
+    }
+
+    /* Formats the error line printed (and thrown) by reportError, shared by every Generate variant. */
+    static String errorMessage(Token token, String explanatoryMessage) {
+        return "Error at line " + token.lineNumber + ": " + explanatoryMessage + " (found '" + token.text + "')";
     }
 }
@@ -0,0 +1,333 @@
+/* The language's grammar as data, for TableDrivenParser. Productions are arrays of grammar
+symbols: a Token symbol for a terminal, NONTERMINAL + id for a nonterminal and LINE for the one
+action the grammar needs. FIRST and FOLLOW sets are computed from the productions by fixpoint
+iteration when the class loads, and from them the LL(1) table that maps a nonterminal and the
+next token's symbol to the production to expand. A conflict in the table fails class loading,
+so a grammar change that breaks LL(1) is caught straight away.
+
+The nonterminals with ids 1 to Nonterminal.count are the ones the trace shows. The loops and
+options that SyntaxAnalyser codes with while and if become hidden nonterminals after those (a
+list's tail, an optional else part), which raise no events and add no error context, so the two
+parsers produce the same events.
+
+SyntaxAnalyser only notices a bad token when it tries to accept it, not when it chooses between
+alternatives, so the table cells for tokens that are in neither FIRST nor FOLLOW are filled with
+a fallback: the nonterminal's only production, its empty production, or (for Statement,
+ConditionalOperator, Condition's last operand and Factor) an error with SyntaxAnalyser's message.
+That keeps every error on the same token with the same message. */
+
+public final class Grammar {
+
+    /* Grammar symbols below NONTERMINAL are terminals, i.e. Token symbols. */
+    public static final int TERMINALS = Token.forSymbol + 1;
+    public static final int NONTERMINAL = 64;
+
+    /* Sets the innermost open nonterminal's error line to the next token's line. SyntaxAnalyser
+    reports a WhileStatement at the line of the token after "while", not the one in error. */
+    public static final int LINE = 127;
+
+    /* Hidden nonterminals. */
+    static final int statementListTail = Nonterminal.count + 1;
+    static final int elsePart = Nonterminal.count + 2;
+    static final int assignmentValue = Nonterminal.count + 3;
+    static final int argumentListTail = Nonterminal.count + 4;
+    static final int conditionValue = Nonterminal.count + 5;
+    static final int expressionTail = Nonterminal.count + 6;
+    static final int termTail = Nonterminal.count + 7;
+
+    public static final int NONTERMINALS = Nonterminal.count + 8;
+
+    private static final String[] hiddenNames = {
+        "StatementListTail", "ElsePart", "AssignmentValue", "ArgumentListTail", "ConditionValue",
+        "ExpressionTail", "TermTail"
+    };
+
+    /* A table cell with no production: report the nonterminal's error. */
+    public static final int ERROR = -1;
+
+    private static final int MAX_PRODUCTIONS = 64;
+
+    private static int productionCount;
+    private static final int[] lhs = new int[MAX_PRODUCTIONS];
+    private static final int[][] rhs = new int[MAX_PRODUCTIONS][];
+    private static final int[] fallbacks = new int[NONTERMINALS];
+    private static final String[] errorMessages = new String[NONTERMINALS];
+
+    /* FIRST and FOLLOW as bit sets over Token symbols (all below 64). */
+    private static final long[] first = new long[NONTERMINALS];
+    private static final long[] follow = new long[NONTERMINALS];
+    private static final boolean[] nullable = new boolean[NONTERMINALS];
+
+    /* table[nonterminal * TERMINALS + symbol] is a production index or ERROR. */
+    private static final int[] table = new int[NONTERMINALS * TERMINALS];
+
+    /* Each production's right-hand side reversed, ready to push on a parse stack. */
+    private static final int[][] reversed = new int[MAX_PRODUCTIONS][];
+
+    static {
+        java.util.Arrays.fill(fallbacks, ERROR);
+
+        fallback(Nonterminal.statementPart,
+                add(Nonterminal.statementPart, Token.beginSymbol, nt(Nonterminal.statementList), Token.endSymbol));
+
+        fallback(Nonterminal.statementList,
+                add(Nonterminal.statementList, nt(Nonterminal.statement), nt(statementListTail)));
+        add(statementListTail, Token.semicolonSymbol, nt(Nonterminal.statementList));
+        fallback(statementListTail, add(statementListTail));
+
+        add(Nonterminal.statement, nt(Nonterminal.assignmentStatement));
+        add(Nonterminal.statement, nt(Nonterminal.procedureStatement));
+        add(Nonterminal.statement, nt(Nonterminal.ifStatement));
+        add(Nonterminal.statement, nt(Nonterminal.whileStatement));
+        add(Nonterminal.statement, nt(Nonterminal.untilStatement));
+        add(Nonterminal.statement, nt(Nonterminal.forStatement));
+        error(Nonterminal.statement, "Expected a statement on line: ");
+
+        fallback(Nonterminal.assignmentStatement,
+                add(Nonterminal.assignmentStatement, Token.identifier, Token.becomesSymbol, nt(assignmentValue)));
+        add(assignmentValue, Token.stringConstant);
+        fallback(assignmentValue, add(assignmentValue, nt(Nonterminal.expression)));
+
+        fallback(Nonterminal.ifStatement,
+                add(Nonterminal.ifStatement, Token.ifSymbol, nt(Nonterminal.condition), Token.thenSymbol,
+                        nt(Nonterminal.statementList), nt(elsePart), Token.endSymbol, Token.ifSymbol));
+        add(elsePart, Token.elseSymbol, nt(Nonterminal.statementList));
+        fallback(elsePart, add(elsePart));
+
+        fallback(Nonterminal.whileStatement,
+                add(Nonterminal.whileStatement, Token.whileSymbol, LINE, nt(Nonterminal.condition), Token.loopSymbol,
+                        nt(Nonterminal.statementList), Token.endSymbol, Token.loopSymbol));
+
+        fallback(Nonterminal.procedureStatement,
+                add(Nonterminal.procedureStatement, Token.callSymbol, Token.identifier, Token.leftParenthesis,
+                        nt(Nonterminal.argumentList), Token.rightParenthesis));
+
+        fallback(Nonterminal.untilStatement,
+                add(Nonterminal.untilStatement, Token.doSymbol, nt(Nonterminal.statementList), Token.untilSymbol,
+                        nt(Nonterminal.condition)));
+
+        fallback(Nonterminal.forStatement,
+                add(Nonterminal.forStatement, Token.forSymbol, Token.leftParenthesis, nt(Nonterminal.assignmentStatement),
+                        Token.semicolonSymbol, nt(Nonterminal.condition), Token.semicolonSymbol,
+                        nt(Nonterminal.assignmentStatement), Token.rightParenthesis, Token.doSymbol,
+                        nt(Nonterminal.statementList), Token.endSymbol, Token.loopSymbol));
+
+        fallback(Nonterminal.argumentList,
+                add(Nonterminal.argumentList, Token.identifier, nt(argumentListTail)));
+        add(argumentListTail, Token.commaSymbol, nt(Nonterminal.argumentList));
+        fallback(argumentListTail, add(argumentListTail));
+
+        fallback(Nonterminal.condition,
+                add(Nonterminal.condition, Token.identifier, nt(Nonterminal.conditionalOperator), nt(conditionValue)));
+        add(conditionValue, Token.identifier);
+        add(conditionValue, Token.numberConstant);
+        add(conditionValue, Token.stringConstant);
+        error(conditionValue, "Expected identifier, number, or string after conditional operator on line: ");
+
+        add(Nonterminal.conditionalOperator, Token.lessThanSymbol);
+        add(Nonterminal.conditionalOperator, Token.greaterThanSymbol);
+        add(Nonterminal.conditionalOperator, Token.greaterEqualSymbol);
+        add(Nonterminal.conditionalOperator, Token.equalSymbol);
+        add(Nonterminal.conditionalOperator, Token.notEqualSymbol);
+        add(Nonterminal.conditionalOperator, Token.lessEqualSymbol);
+        error(Nonterminal.conditionalOperator, "Expected a conditional operator on line: ");
+
+        fallback(Nonterminal.expression,
+                add(Nonterminal.expression, nt(Nonterminal.term), nt(expressionTail)));
+        add(expressionTail, Token.plusSymbol, nt(Nonterminal.term), nt(expressionTail));
+        add(expressionTail, Token.minusSymbol, nt(Nonterminal.term), nt(expressionTail));
+        fallback(expressionTail, add(expressionTail));
+
+        fallback(Nonterminal.term,
+                add(Nonterminal.term, nt(Nonterminal.factor), nt(termTail)));
+        add(termTail, Token.timesSymbol, nt(Nonterminal.factor), nt(termTail));
+        add(termTail, Token.divideSymbol, nt(Nonterminal.factor), nt(termTail));
+        add(termTail, Token.modSymbol, nt(Nonterminal.factor), nt(termTail));
+        fallback(termTail, add(termTail));
+
+        add(Nonterminal.factor, Token.identifier);
+        add(Nonterminal.factor, Token.numberConstant);
+        add(Nonterminal.factor, Token.leftParenthesis, nt(Nonterminal.expression), Token.rightParenthesis);
+        error(Nonterminal.factor, "Expected identifier, number, or ( on line: ");
+
+        computeFirst();
+        computeFollow();
+        buildTable();
+    }
+
+    private Grammar() {
+    }
+
+    public static int nt(int nonterminal) {
+        return NONTERMINAL + nonterminal;
+    }
+
+    private static int add(int left, int... right) {
+        lhs[productionCount] = left;
+        rhs[productionCount] = right;
+        int[] backwards = new int[right.length];
+        for (int i = 0; i < right.length; i++) {
+            backwards[i] = right[right.length - 1 - i];
+        }
+        reversed[productionCount] = backwards;
+        return productionCount++;
+    }
+
+    private static void fallback(int nonterminal, int production) {
+        fallbacks[nonterminal] = production;
+    }
+
+    private static void error(int nonterminal, String message) {
+        errorMessages[nonterminal] = message;
+    }
+
+    /* FIRST of a sequence of grammar symbols from position start; bit 0 stands for "can be empty". */
+    private static long first(int[] symbols, int start) {
+        long set = 0;
+        for (int i = start; i < symbols.length; i++) {
+            int symbol = symbols[i];
+            if (symbol == LINE) {
+                continue;
+            }
+            if (symbol < NONTERMINAL) {
+                return set | 1L << symbol;
+            }
+            set |= first[symbol - NONTERMINAL];
+            if (!nullable[symbol - NONTERMINAL]) {
+                return set;
+            }
+        }
+        return set | 1L;
+    }
+
+    private static void computeFirst() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productionCount; p++) {
+                long set = first(rhs[p], 0);
+                int left = lhs[p];
+                long terminals = set & ~1L;
+                if ((first[left] | terminals) != first[left]) {
+                    first[left] |= terminals;
+                    changed = true;
+                }
+                if ((set & 1L) != 0 && !nullable[left]) {
+                    nullable[left] = true;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static void computeFollow() {
+        follow[Nonterminal.statementPart] = 1L << Token.eofSymbol;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productionCount; p++) {
+                int[] right = rhs[p];
+                for (int i = 0; i < right.length; i++) {
+                    if (right[i] < NONTERMINAL || right[i] == LINE) {
+                        continue;
+                    }
+                    int n = right[i] - NONTERMINAL;
+                    long rest = first(right, i + 1);
+                    long set = rest & ~1L;
+                    if ((rest & 1L) != 0) {
+                        set |= follow[lhs[p]];
+                    }
+                    if ((follow[n] | set) != follow[n]) {
+                        follow[n] |= set;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void buildTable() {
+        java.util.Arrays.fill(table, ERROR);
+        for (int p = 0; p < productionCount; p++) {
+            long predict = first(rhs[p], 0);
+            if ((predict & 1L) != 0) {
+                predict |= follow[lhs[p]];
+            }
+            for (int symbol = 1; symbol < TERMINALS; symbol++) {
+                if ((predict & 1L << symbol) == 0) {
+                    continue;
+                }
+                int cell = lhs[p] * TERMINALS + symbol;
+                if (table[cell] != ERROR) {
+                    throw new IllegalStateException("grammar is not LL(1): " + getName(lhs[p]) + " has two productions for "
+                            + Token.getName(symbol));
+                }
+                table[cell] = p;
+            }
+        }
+        for (int n = 1; n < NONTERMINALS; n++) {
+            if (fallbacks[n] == ERROR && errorMessages[n] == null) {
+                throw new IllegalStateException(getName(n) + " has neither a fallback production nor an error message");
+            }
+            for (int symbol = 0; symbol < TERMINALS; symbol++) {
+                if (table[n * TERMINALS + symbol] == ERROR) {
+                    table[n * TERMINALS + symbol] = fallbacks[n];
+                }
+            }
+        }
+    }
+
+    /* The production to expand for nonterminal with the given next token, or ERROR. */
+    public static int predict(int nonterminal, int symbol) {
+        return table[nonterminal * TERMINALS + symbol];
+    }
+
+    /* The whole table, for a parser's inner loop. */
+    static int[] table() {
+        return table;
+    }
+
+    /* A production's right-hand side, last symbol first. */
+    static int[] reversed(int production) {
+        return reversed[production];
+    }
+
+    public static int productionCount() {
+        return productionCount;
+    }
+
+    public static int lhs(int production) {
+        return lhs[production];
+    }
+
+    public static int[] rhs(int production) {
+        return rhs[production].clone();
+    }
+
+    /* FIRST and FOLLOW of a nonterminal as bit sets over Token symbols. */
+    public static long first(int nonterminal) {
+        return first[nonterminal];
+    }
+
+    public static long follow(int nonterminal) {
+        return follow[nonterminal];
+    }
+
+    public static boolean nullable(int nonterminal) {
+        return nullable[nonterminal];
+    }
+
+    /* The start of the error message for a nonterminal without a fallback; the line number follows it. */
+    static String errorMessage(int nonterminal) {
+        return errorMessages[nonterminal];
+    }
+
+    /* True for the nonterminals that appear in the trace. */
+    public static boolean isVisible(int nonterminal) {
+        return nonterminal <= Nonterminal.count;
+    }
+
+    public static String getName(int nonterminal) {
+        return isVisible(nonterminal) ? Nonterminal.getName(nonterminal) : hiddenNames[nonterminal - Nonterminal.count - 1];
+    }
+}
@@ -0,0 +1,14 @@
+/* An identifier token that also carries the id of its name in the SymbolTable of the scanner
+that made it, so the stages after the scanner can compare names as ints. Its text is the
+table's String for the name, shared by every occurrence. */
+
+public class IdentifierToken extends Token {
+
+    /** The id of the name in the scanner's SymbolTable. */
+    public final int nameId;
+
+    public IdentifierToken(String text, int lineNumber, int nameId) {
+        super(Token.identifier, text, lineNumber);
+        this.nameId = nameId;
+    }
+}
@@ -0,0 +1,491 @@
+import java.io.*;
+import java.util.*;
+
+/* Keeps a program parsed while it is being edited, for editors that re-check the source on every
+keystroke. It holds the source, its token stream (symbol, text, line and source extent of every
+token) and the trace events of the last parse, and for every Statement (at any depth: the
+entries of each StatementList and the bodies of if, while, for and do) the range of tokens and
+events it covers.
+
+An edit re-lexes from the end of the last token before the change only until the scanner is
+back in step with the old tokens (a new token starts where an old one did, shifted by the
+edit), then splices the new tokens in and shifts the rest. Only the smallest statement that
+contains every replaced token is parsed again; its events replace the old ones. If that
+statement now covers a different stretch of tokens, its parent is tried, and if no statement
+fits (an edit to a ';' between top-level statements, or a syntax error) the whole program is
+parsed again.
+
+Lexing, parsing and building events therefore cost in proportion to the edited statement. What
+remains linear in the file is plain int bookkeeping: moving the arrays and shifting offsets.
+The source must use '\n' line endings. */
+
+public class IncrementalParser {
+
+    /* Event kinds; an event's value is a nonterminal id for BEGIN/END and a token index for TOKEN. */
+    public static final int BEGIN = 0;
+    public static final int END = 1;
+    public static final int TOKEN = 2;
+
+    private static final char EOF = '\000';
+
+    /* The source in buf[0, length), an extra '\n' if it does not end with one, then EOF. */
+    private char[] buf = new char[16];
+    private int length;
+    private int limit;
+
+    /* The token stream, ending with the EOF token. */
+    private int tokenCount;
+    private int[] symbols = new int[64];
+    private String[] texts = new String[64];
+    private int[] lines = new int[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    /* Identifier names, kept across edits so re-lexed tokens share one String per name. */
+    private final SymbolTable names = new SymbolTable();
+
+    /* The trace events of the last parse, without the final 312SUCCESS. */
+    private int eventCount;
+    private int[] eventKinds = new int[256];
+    private int[] eventValues = new int[256];
+
+    /* One entry per Statement: its tokens [tokenStart, tokenEnd) and events [eventStart, eventEnd). */
+    private int statementCount;
+    private int[] statementTokenStarts = new int[32];
+    private int[] statementTokenEnds = new int[32];
+    private int[] statementEventStarts = new int[32];
+    private int[] statementEventEnds = new int[32];
+
+    /* null after a successful parse, otherwise the error trace parse() would have printed. */
+    private String errorTrace;
+
+    public IncrementalParser(CharSequence source) {
+        replace(0, 0, source);
+        relexAll();
+        parseAll();
+    }
+
+    /** Describes what one edit changed. */
+    public static class Change {
+        /** True if the whole program had to be parsed again; the other fields then cover everything. */
+        public final boolean fullReparse;
+        /** The events [firstEvent, firstEvent + removedEvents) were replaced by addedEvents new ones. */
+        public final int firstEvent;
+        public final int removedEvents;
+        public final int addedEvents;
+        /** Tokens from firstShiftedToken on kept their text but moved lineDelta lines, changing their TOKEN events. */
+        public final int firstShiftedToken;
+        public final int lineDelta;
+        /** Number of tokens that were scanned again. */
+        public final int relexedTokens;
+
+        Change(boolean fullReparse, int firstEvent, int removedEvents, int addedEvents,
+               int firstShiftedToken, int lineDelta, int relexedTokens) {
+            this.fullReparse = fullReparse;
+            this.firstEvent = firstEvent;
+            this.removedEvents = removedEvents;
+            this.addedEvents = addedEvents;
+            this.firstShiftedToken = firstShiftedToken;
+            this.lineDelta = lineDelta;
+            this.relexedTokens = relexedTokens;
+        }
+    }
+
+/* Replaces removed characters at offset with inserted and brings tokens, events and statement
+ranges up to date. */
+
+    public Change edit(int offset, int removed, CharSequence inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IndexOutOfBoundsException("edit " + offset + "+" + removed + " outside 0.." + length);
+        }
+        int delta = inserted.length() - removed;
+        int oldLimit = limit;
+        replace(offset, removed, inserted);
+
+        /* The first token the edit can affect: scanning a token looks at the character just past it. */
+        int from = 0;
+        while (from < tokenCount - 1 && ends[from] < offset) {
+            from++;
+        }
+        int restart = from == 0 ? 0 : ends[from - 1];
+        int restartLine = from == 0 ? 0 : lines[from - 1];
+
+        /* Re-scan until a new token starts where an old token past the edit started. */
+        int oldEditEnd = offset + removed;
+        List<Token> fresh = new ArrayList<>();
+        List<int[]> extents = new ArrayList<>();
+        ArrayLexicalAnalyser lexer = new ArrayLexicalAnalyser(buf, limit, restart, restartLine, names);
+        int resync = tokenCount;
+        int lineDelta = 0;
+        int old = from;
+        while (true) {
+            Token token = lexer.getNextToken();
+            int start = lexer.tokenExtentStart();
+            while (old < tokenCount && shifted(starts[old], oldEditEnd, delta, oldLimit) < start) {
+                old++;
+            }
+            if (start >= offset + inserted.length() && old < tokenCount && starts[old] >= oldEditEnd
+                    && shifted(starts[old], oldEditEnd, delta, oldLimit) == start && symbols[old] == token.symbol) {
+                resync = old;
+                lineDelta = token.lineNumber - lines[old];
+                break;
+            }
+            fresh.add(new Token(token.symbol, token.text, token.lineNumber));
+            extents.add(new int[] {start, lexer.tokenExtentEnd()});
+            if (token.symbol == Token.eofSymbol) {
+                break;
+            }
+        }
+
+        int tokenDelta = fresh.size() - (resync - from);
+        spliceTokens(from, resync, fresh, extents, delta, lineDelta, oldEditEnd, oldLimit);
+        int shiftedFrom = resync + tokenDelta;
+
+        /* An error trace quotes line numbers, so it is rebuilt even when only lines moved. */
+        if (errorTrace != null && (lineDelta != 0 || !fresh.isEmpty() || resync != from)) {
+            return fullReparse(shiftedFrom, lineDelta, fresh.size());
+        }
+        if (fresh.isEmpty() && resync == from) {
+            return new Change(false, 0, 0, 0, shiftedFrom, lineDelta, 0);
+        }
+
+        /* Reparse the smallest statement holding every replaced token, widening while it does not fit. */
+        int lower = -1;
+        while (true) {
+            int statement = smallestEnclosing(from, resync, lower);
+            if (statement < 0) {
+                return fullReparse(shiftedFrom, lineDelta, fresh.size());
+            }
+            Change change = reparseStatement(statement, tokenDelta, from, resync, shiftedFrom, lineDelta, fresh.size());
+            if (change != null) {
+                return change;
+            }
+            lower = statementTokenEnds[statement] - statementTokenStarts[statement];
+        }
+    }
+
+    /* Old source offset moved to where it is after the edit; EOF sits at the (maybe changed) limit. */
+    private int shifted(int position, int oldEditEnd, int delta, int oldLimit) {
+        if (position >= oldLimit) {
+            return limit;
+        }
+        return position >= oldEditEnd ? position + delta : position;
+    }
+
+    /* The smallest statement (by token count, larger than lower) whose tokens contain [from, to) in old indices. */
+    private int smallestEnclosing(int from, int to, int lower) {
+        int best = -1;
+        int bestSize = Integer.MAX_VALUE;
+        for (int i = 0; i < statementCount; i++) {
+            int size = statementTokenEnds[i] - statementTokenStarts[i];
+            if (statementTokenStarts[i] <= from && to <= statementTokenEnds[i] && size > lower && size < bestSize) {
+                best = i;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    /* Parses one statement again over the already spliced tokens; null if it no longer fits its range. */
+    private Change reparseStatement(int statement, int tokenDelta, int from, int resync, int shiftedFrom, int lineDelta, int relexed) {
+        int first = statementTokenStarts[statement];
+        int end = statementTokenEnds[statement] + tokenDelta;
+        Recorder recorder = new Recorder(first);
+        SyntaxAnalyser syn = new SyntaxAnalyser(tokensFrom(first), recordingGenerate(recorder));
+        try {
+            syn.parseStatement();
+        } catch (CompilationException | IOException e) {
+            return null;
+        }
+        if (recorder.tokens != end - first) {
+            return null;
+        }
+
+        int eventStart = statementEventStarts[statement];
+        int eventEnd = statementEventEnds[statement];
+        int eventDelta = recorder.eventCount - (eventEnd - eventStart);
+        spliceEvents(eventStart, eventEnd, recorder, resync, tokenDelta);
+        spliceStatements(statement, first, end - tokenDelta, recorder, resync, tokenDelta, eventStart, eventEnd, eventDelta);
+        return new Change(false, eventStart, eventEnd - eventStart, recorder.eventCount, shiftedFrom, lineDelta, relexed);
+    }
+
+    private Change fullReparse(int shiftedFrom, int lineDelta, int relexed) {
+        int removed = eventCount;
+        parseAll();
+        return new Change(true, 0, removed, eventCount, shiftedFrom, lineDelta, relexed);
+    }
+
+    /** True if the last parse succeeded. */
+    public boolean succeeded() {
+        return errorTrace == null;
+    }
+
+    /** The trace parse() prints to res.txt for the error, or null after a successful parse. */
+    public String errorTrace() {
+        return errorTrace;
+    }
+
+    public int eventCount() {
+        return eventCount;
+    }
+
+    public int eventKind(int event) {
+        return eventKinds[event];
+    }
+
+    /** The trace line Generate prints for an event. */
+    public String traceLine(int event) {
+        int value = eventValues[event];
+        switch (eventKinds[event]) {
+            case BEGIN:
+                return "312BEGIN " + Nonterminal.getName(value);
+            case END:
+                return "312END " + Nonterminal.getName(value);
+            default:
+                String tt = Token.getName(symbols[value]);
+                if ((symbols[value] == Token.identifier) || (symbols[value] == Token.numberConstant) || (symbols[value] == Token.stringConstant))
+                    tt += " '" + texts[value] + "'";
+                return "312TOKEN " + tt + " on line " + lines[value];
+        }
+    }
+
+    /** The current source text. */
+    public String text() {
+        return new String(buf, 0, length);
+    }
+
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    /* ---- source, tokens and events ---- */
+
+    private void replace(int offset, int removed, CharSequence inserted) {
+        for (int i = 0; i < inserted.length(); i++) {
+            if (inserted.charAt(i) == '\r') {
+                throw new IllegalArgumentException("IncrementalParser expects '\\n' line endings");
+            }
+        }
+        int newLength = length - removed + inserted.length();
+        if (newLength + 2 > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, newLength + 2));
+        }
+        System.arraycopy(buf, offset + removed, buf, offset + inserted.length(), length - offset - removed);
+        for (int i = 0; i < inserted.length(); i++) {
+            buf[offset + i] = inserted.charAt(i);
+        }
+        length = newLength;
+        limit = length;
+        if (length > 0 && buf[length - 1] != '\n') {
+            buf[limit++] = '\n';
+        }
+        buf[limit] = EOF;
+    }
+
+    private void relexAll() {
+        ArrayLexicalAnalyser lexer = new ArrayLexicalAnalyser(buf, limit, 0, 0, names);
+        tokenCount = 0;
+        while (true) {
+            Token token = lexer.getNextToken();
+            ensureTokens(tokenCount + 1);
+            setToken(tokenCount++, token, lexer.tokenExtentStart(), lexer.tokenExtentEnd());
+            if (token.symbol == Token.eofSymbol) {
+                return;
+            }
+        }
+    }
+
+    private void setToken(int index, Token token, int start, int end) {
+        symbols[index] = token.symbol;
+        texts[index] = token.text;
+        lines[index] = token.lineNumber;
+        starts[index] = start;
+        ends[index] = end;
+    }
+
+    private void ensureTokens(int size) {
+        if (size > symbols.length) {
+            int capacity = Math.max(size, symbols.length * 2);
+            symbols = Arrays.copyOf(symbols, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+    }
+
+    /* Replaces old tokens [from, resync) with fresh ones and shifts the tokens after them. */
+    private void spliceTokens(int from, int resync, List<Token> fresh, List<int[]> extents, int delta, int lineDelta, int oldEditEnd, int oldLimit) {
+        int tokenDelta = fresh.size() - (resync - from);
+        ensureTokens(tokenCount + tokenDelta);
+        int tail = tokenCount - resync;
+        System.arraycopy(symbols, resync, symbols, resync + tokenDelta, tail);
+        System.arraycopy(texts, resync, texts, resync + tokenDelta, tail);
+        System.arraycopy(lines, resync, lines, resync + tokenDelta, tail);
+        System.arraycopy(starts, resync, starts, resync + tokenDelta, tail);
+        System.arraycopy(ends, resync, ends, resync + tokenDelta, tail);
+        for (int i = 0; i < fresh.size(); i++) {
+            setToken(from + i, fresh.get(i), extents.get(i)[0], extents.get(i)[1]);
+        }
+        tokenCount += tokenDelta;
+        for (int i = resync + tokenDelta; i < tokenCount; i++) {
+            starts[i] = shifted(starts[i], oldEditEnd, delta, oldLimit);
+            ends[i] = shifted(ends[i], oldEditEnd, delta, oldLimit);
+            lines[i] += lineDelta;
+        }
+    }
+
+    /* Replaces events [eventStart, eventEnd) with the recorder's and renumbers later TOKEN events. */
+    private void spliceEvents(int eventStart, int eventEnd, Recorder recorder, int resync, int tokenDelta) {
+        int eventDelta = recorder.eventCount - (eventEnd - eventStart);
+        int size = eventCount + eventDelta;
+        if (size > eventKinds.length) {
+            eventKinds = Arrays.copyOf(eventKinds, Math.max(size, eventKinds.length * 2));
+            eventValues = Arrays.copyOf(eventValues, eventKinds.length);
+        }
+        System.arraycopy(eventKinds, eventEnd, eventKinds, eventEnd + eventDelta, eventCount - eventEnd);
+        System.arraycopy(eventValues, eventEnd, eventValues, eventEnd + eventDelta, eventCount - eventEnd);
+        System.arraycopy(recorder.eventKinds, 0, eventKinds, eventStart, recorder.eventCount);
+        System.arraycopy(recorder.eventValues, 0, eventValues, eventStart, recorder.eventCount);
+        eventCount = size;
+        for (int i = eventStart + recorder.eventCount; i < eventCount; i++) {
+            if (eventKinds[i] == TOKEN && eventValues[i] >= resync) {
+                eventValues[i] += tokenDelta;
+            }
+        }
+    }
+
+    /* Replaces the statement entries inside the reparsed one with the recorder's and shifts the rest. */
+    private void spliceStatements(int statement, int first, int oldEnd, Recorder recorder, int resync, int tokenDelta,
+                                  int eventStart, int eventEnd, int eventDelta) {
+        int kept = 0;
+        for (int i = 0; i < statementCount; i++) {
+            int tokenStart = statementTokenStarts[i];
+            int tokenEnd = statementTokenEnds[i];
+            if (first <= tokenStart && tokenEnd <= oldEnd && statementEventStarts[i] >= eventStart && statementEventEnds[i] <= eventEnd) {
+                continue;
+            }
+            statementTokenStarts[kept] = tokenStart >= resync ? tokenStart + tokenDelta : tokenStart;
+            statementTokenEnds[kept] = tokenEnd >= resync ? tokenEnd + tokenDelta : tokenEnd;
+            statementEventStarts[kept] = statementEventStarts[i] >= eventEnd ? statementEventStarts[i] + eventDelta : statementEventStarts[i];
+            statementEventEnds[kept] = statementEventEnds[i] >= eventEnd ? statementEventEnds[i] + eventDelta : statementEventEnds[i];
+            kept++;
+        }
+        statementCount = kept;
+        for (int i = 0; i < recorder.statementCount; i++) {
+            addStatement(recorder.statements[4 * i], recorder.statements[4 * i + 1],
+                    eventStart + recorder.statements[4 * i + 2], eventStart + recorder.statements[4 * i + 3]);
+        }
+    }
+
+    private void addStatement(int tokenStart, int tokenEnd, int eventStart, int eventEnd) {
+        if (statementCount == statementTokenStarts.length) {
+            int capacity = statementCount * 2;
+            statementTokenStarts = Arrays.copyOf(statementTokenStarts, capacity);
+            statementTokenEnds = Arrays.copyOf(statementTokenEnds, capacity);
+            statementEventStarts = Arrays.copyOf(statementEventStarts, capacity);
+            statementEventEnds = Arrays.copyOf(statementEventEnds, capacity);
+        }
+        statementTokenStarts[statementCount] = tokenStart;
+        statementTokenEnds[statementCount] = tokenEnd;
+        statementEventStarts[statementCount] = eventStart;
+        statementEventEnds[statementCount] = eventEnd;
+        statementCount++;
+    }
+
+    /* Parses the whole token stream again, as SyntaxAnalyser.parse would. */
+    private void parseAll() {
+        Recorder recorder = new Recorder(0);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (PrintStream ps = new PrintStream(result)) {
+            new SyntaxAnalyser(tokensFrom(0), recordingGenerate(recorder)).parse(ps);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        eventKinds = recorder.eventKinds;
+        eventValues = recorder.eventValues;
+        eventCount = recorder.eventCount;
+        statementCount = 0;
+        for (int i = 0; i < recorder.statementCount; i++) {
+            addStatement(recorder.statements[4 * i], recorder.statements[4 * i + 1],
+                    recorder.statements[4 * i + 2], recorder.statements[4 * i + 3]);
+        }
+        errorTrace = result.size() == 0 ? null : result.toString();
+    }
+
+    private static Generate recordingGenerate(Recorder recorder) {
+        return new Generate(new PrintStream(OutputStream.nullOutputStream()), false, recorder);
+    }
+
+    /* Hands out the stored tokens from index first on; EOF repeats at the end. */
+    private TokenSource tokensFrom(int first) {
+        int[] next = {first};
+        return () -> {
+            int i = Math.min(next[0]++, tokenCount - 1);
+            return new Token(symbols[i], texts[i], lines[i]);
+        };
+    }
+
+/* Records a parse's events, numbering terminals from the token index the parse starts at, and
+the token and event range of every Statement. */
+
+    private static class Recorder implements ParseListener {
+        final int firstToken;
+        int tokens;
+        int eventCount;
+        int[] eventKinds = new int[256];
+        int[] eventValues = new int[256];
+        int statementCount;
+        int[] statements = new int[64];
+        int depth;
+        int[] open = new int[32];
+
+        Recorder(int firstToken) {
+            this.firstToken = firstToken;
+        }
+
+        @Override
+        public void commenceNonterminal(int nonterminal) {
+            if (nonterminal == Nonterminal.statement) {
+                if (depth + 2 > open.length) {
+                    open = Arrays.copyOf(open, open.length * 2);
+                }
+                open[depth++] = firstToken + tokens;
+                open[depth++] = eventCount;
+            }
+            add(BEGIN, nonterminal);
+        }
+
+        @Override
+        public void finishNonterminal(int nonterminal) {
+            add(END, nonterminal);
+            if (nonterminal == Nonterminal.statement) {
+                if (4 * statementCount + 4 > statements.length) {
+                    statements = Arrays.copyOf(statements, statements.length * 2);
+                }
+                int eventStart = open[--depth];
+                int tokenStart = open[--depth];
+                statements[4 * statementCount] = tokenStart;
+                statements[4 * statementCount + 1] = firstToken + tokens;
+                statements[4 * statementCount + 2] = eventStart;
+                statements[4 * statementCount + 3] = eventCount;
+                statementCount++;
+            }
+        }
+
+        @Override
+        public void insertTerminal(Token token) {
+            add(TOKEN, firstToken + tokens);
+            tokens++;
+        }
+
+        private void add(int kind, int value) {
+            if (eventCount == eventKinds.length) {
+                eventKinds = Arrays.copyOf(eventKinds, eventCount * 2);
+                eventValues = Arrays.copyOf(eventValues, eventCount * 2);
+            }
+            eventKinds[eventCount] = kind;
+            eventValues[eventCount] = value;
+            eventCount++;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.*;
+
+/* Runs a Program by walking its statements, the way the programs were run before they could be
+compiled. It is the reference BytecodeGenerate's classes are checked against and the baseline
+they are measured against, so it evaluates exactly as Program describes and nothing more. */
+
+public class Interpreter implements ProgramRunner {
+
+    private final Program program;
+
+    public Interpreter(Program program) {
+        this.program = program;
+    }
+
+    @Override
+    public void run(ProgramIO io) {
+        double[] numbers = new double[program.variableCount()];
+        String[] texts = new String[program.variableCount()];
+        Arrays.fill(texts, "");
+        execute(program.statements(), numbers, texts, io);
+    }
+
+    private void execute(List<Program.Statement> statements, double[] numbers, String[] texts, ProgramIO io) {
+        for (Program.Statement statement : statements) {
+            switch (statement.kind) {
+                case Program.ASSIGN:
+                    assign(statement, numbers, texts);
+                    break;
+                case Program.IF:
+                    execute(test(statement.condition, numbers, texts) ? statement.body : statement.otherwise, numbers, texts, io);
+                    break;
+                case Program.WHILE:
+                    while (test(statement.condition, numbers, texts)) {
+                        execute(statement.body, numbers, texts, io);
+                    }
+                    break;
+                case Program.UNTIL:
+                    do {
+                        execute(statement.body, numbers, texts, io);
+                    } while (!test(statement.condition, numbers, texts));
+                    break;
+                case Program.FOR:
+                    assign(statement.initial, numbers, texts);
+                    while (test(statement.condition, numbers, texts)) {
+                        execute(statement.body, numbers, texts, io);
+                        assign(statement.step, numbers, texts);
+                    }
+                    break;
+                case Program.GET:
+                    for (int variable : statement.arguments) {
+                        if (program.holdsText(variable)) {
+                            texts[variable] = io.getText();
+                        } else {
+                            numbers[variable] = io.getNumber();
+                        }
+                    }
+                    break;
+                case Program.PUT:
+                    for (int variable : statement.arguments) {
+                        if (program.holdsText(variable)) {
+                            io.put(texts[variable]);
+                        } else {
+                            io.put(numbers[variable]);
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("unknown statement kind " + statement.kind);
+            }
+        }
+    }
+
+    private static void assign(Program.Statement statement, double[] numbers, String[] texts) {
+        if (statement.text != null) {
+            texts[statement.variable] = statement.text;
+        } else {
+            numbers[statement.variable] = evaluate(statement.expression, numbers);
+        }
+    }
+
+    private boolean test(Program.Condition condition, double[] numbers, String[] texts) {
+        if (program.holdsText(condition.variable)) {
+            String right = condition.text != null ? condition.text : texts[condition.right.variable];
+            int order = texts[condition.variable].compareTo(right);
+            switch (condition.operator) {
+                case Token.equalSymbol:
+                    return order == 0;
+                case Token.notEqualSymbol:
+                    return order != 0;
+                case Token.lessThanSymbol:
+                    return order < 0;
+                case Token.lessEqualSymbol:
+                    return order <= 0;
+                case Token.greaterThanSymbol:
+                    return order > 0;
+                default:
+                    return order >= 0;
+            }
+        }
+        double left = numbers[condition.variable];
+        double right = evaluate(condition.right, numbers);
+        switch (condition.operator) {
+            case Token.equalSymbol:
+                return left == right;
+            case Token.notEqualSymbol:
+                return left != right;
+            case Token.lessThanSymbol:
+                return left < right;
+            case Token.lessEqualSymbol:
+                return left <= right;
+            case Token.greaterThanSymbol:
+                return left > right;
+            default:
+                return left >= right;
+        }
+    }
+
+    static double evaluate(Program.Expression expression, double[] numbers) {
+        switch (expression.kind) {
+            case Program.CONSTANT:
+                return expression.value;
+            case Program.VARIABLE:
+                return numbers[expression.variable];
+            case Token.plusSymbol:
+                return evaluate(expression.left, numbers) + evaluate(expression.right, numbers);
+            case Token.minusSymbol:
+                return evaluate(expression.left, numbers) - evaluate(expression.right, numbers);
+            case Token.timesSymbol:
+                return evaluate(expression.left, numbers) * evaluate(expression.right, numbers);
+            case Token.divideSymbol:
+                return evaluate(expression.left, numbers) / evaluate(expression.right, numbers);
+            case Token.modSymbol:
+                return evaluate(expression.left, numbers) % evaluate(expression.right, numbers);
+            case Program.POWER_OF_TWO_REMAINDER:
+                return Program.remainder(evaluate(expression.left, numbers), expression.right.value);
+            default:
+                throw new IllegalStateException("unknown operator " + Token.getName(expression.kind));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/* Integer ids for the nonterminals of the grammar, used by the parse-event API instead of
+passing the nonterminal's name as a String on every event. Laid out like the symbol
+constants in Token: ids start at 1 and getName gives the name printed in the trace. */
+
+public class Nonterminal {
+
+    public static final int statementPart = 1;
+    public static final int statementList = 2;
+    public static final int statement = 3;
+    public static final int assignmentStatement = 4;
+    public static final int ifStatement = 5;
+    public static final int whileStatement = 6;
+    public static final int procedureStatement = 7;
+    public static final int untilStatement = 8;
+    public static final int forStatement = 9;
+    public static final int argumentList = 10;
+    public static final int condition = 11;
+    public static final int conditionalOperator = 12;
+    public static final int expression = 13;
+    public static final int term = 14;
+    public static final int factor = 15;
+
+    /* Number of nonterminals, so per-nonterminal tables can be sized count + 1 and indexed by id. */
+    public static final int count = 15;
+
+    private static final String[] names = {
+        "StatementPart", "StatementList", "Statement", "AssignmentStatement", "IfStatement",
+        "WhileStatement", "ProcedureStatement", "UntilStatement", "ForStatement", "ArgumentList",
+        "Condition", "ConditionalOperator", "Expression", "Term", "Factor"
+    };
+
+    public static String getName(int i) {
+        if (i < 1 || i > names.length) {
+            return "UNKNOWN";
+        }
+        return names[i - 1];
+    }
+}
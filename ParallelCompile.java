@@ -0,0 +1,94 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* Batch driver that compiles many files at once on a ForkJoinPool using every core. Each file
+is compiled in its own session (see CompileResult.compile) and the results are written in the
+order the files were given as soon as each is ready, so output.txt and res.txt come out exactly
+as the sequential Compile would write them.
+
+With no arguments it walks Programs Folder/programN like Compile; with a directory it compiles
+every file in it in name order; otherwise the arguments are the files to compile, in order.
+With the "compile.cache" system property naming a directory, results come from and go to a
+CompileCache there, so only files whose content changed are parsed. */
+
+public class ParallelCompile {
+
+    static final String PROGRAMS = "Programs Folder" + File.separator + "program";
+
+    public static void main(String[] args) throws IOException {
+        List<String> files = inputs(args);
+        System.out.println("312START");
+        try (PrintStream res = new PrintStream(new FileOutputStream("res.txt"))) {
+            compileAll(files, System.out, res);
+        }
+        finish(System.out, args, files);
+        CompileCache cache = CompileCache.fromProperties();
+        if (cache != null) {
+            System.err.println(cache.statistics());
+        }
+    }
+
+/* The files named by the arguments as described above. */
+
+    static List<String> inputs(String[] args) {
+        List<String> files = new ArrayList<>();
+        if (args.length == 0) {
+            while (new File(PROGRAMS + files.size()).exists()) {
+                files.add(PROGRAMS + files.size());
+            }
+        } else if (args.length == 1 && new File(args[0]).isDirectory()) {
+            File[] entries = new File(args[0]).listFiles(File::isFile);
+            Arrays.sort(entries);
+            for (File entry : entries) {
+                files.add(entry.getPath());
+            }
+        } else {
+            files.addAll(Arrays.asList(args));
+        }
+        return files;
+    }
+
+/* Ends the output the way Compile does, including its line for the first missing program when
+walking Programs Folder. */
+
+    static void finish(PrintStream out, String[] args, List<String> files) {
+        if (args.length == 0) {
+            out.println(PROGRAMS + files.size() + " does not exist");
+        }
+        out.println();
+        out.println("312FINISH");
+    }
+
+/* Compiles the files in parallel and writes each result to out and res in list order. */
+
+    public static void compileAll(List<String> files, PrintStream out, PrintStream res) throws IOException {
+        CompileCache cache = CompileCache.fromProperties();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<CompileResult>> results = new ArrayList<>();
+            for (String file : files) {
+                results.add(pool.submit(() -> cache != null ? cache.compile(file) : CompileResult.compile(file)));
+            }
+            for (Future<CompileResult> result : results) {
+                get(result).writeTo(out, res);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static CompileResult get(Future<CompileResult> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while compiling");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/* A CompilationException that records the parser's context frames ("in Expression on line: 4")
+as a nonterminal id and a line number in two int arrays, instead of one chained exception per
+frame. Every failing nonterminal adds its frame to the same object, no stack trace is ever
+captured, and the frame messages are only formatted when they are read, so a failure deep
+inside a long statement list costs a few array writes per level.
+
+getMessage and getCause still describe the usual chain (outermost frame first, ending with the
+error reported by Generate), and toTraceString gives exactly the text the chained exceptions
+would have given. */
+
+public class ParseFailure extends CompilationException {
+
+    private static final long serialVersionUID = 1L;
+
+    /* Same limit CompilationException.toTraceString uses. */
+    private static final int MAX_TRACE_DEPTH = 20;
+
+    /* Frames innermost first; frame i is "in <nonterminals[i]> on line: <lines[i]>". */
+    private int[] nonterminals;
+    private int[] lines;
+    private int depth;
+    /* True for the views handed out by getCause, which share the arrays above. */
+    private final boolean shared;
+
+    /* The innermost message (normally from reportError) and whatever caused it. */
+    private final String message;
+    private final Throwable rootCause;
+
+    public ParseFailure(String message) {
+        this(message, null);
+    }
+
+    private ParseFailure(String message, Throwable rootCause) {
+        super(message);
+        this.message = message;
+        this.rootCause = rootCause;
+        this.nonterminals = new int[8];
+        this.lines = new int[8];
+        this.shared = false;
+    }
+
+    private ParseFailure(ParseFailure failure, int depth) {
+        super(failure.message);
+        this.message = failure.message;
+        this.rootCause = failure.rootCause;
+        this.nonterminals = failure.nonterminals;
+        this.lines = failure.lines;
+        this.depth = depth;
+        this.shared = true;
+    }
+
+/* Adds the frame for a nonterminal that failed on the given line. A ParseFailure gets the frame
+added in place; any other CompilationException becomes the innermost message of a new one. */
+
+    public static ParseFailure wrap(CompilationException e, int nonterminal, int line) {
+        return wrap(e, nonterminal, line, 1);
+    }
+
+    /* Adds the same frame count times, for the nested levels of an iteratively parsed list. */
+    public static ParseFailure wrap(CompilationException e, int nonterminal, int line, int count) {
+        ParseFailure failure = e instanceof ParseFailure ? (ParseFailure) e : new ParseFailure(e.getMessage(), e.getCause());
+        for (int i = 0; i < count; i++) {
+            failure.push(nonterminal, line);
+        }
+        return failure;
+    }
+
+    /* The innermost error of e on its own, without the context frames e has collected. */
+    public static ParseFailure withoutContext(CompilationException e) {
+        if (e instanceof ParseFailure) {
+            ParseFailure failure = (ParseFailure) e;
+            return new ParseFailure(failure.message, failure.rootCause);
+        }
+        return new ParseFailure(e.getMessage(), e.getCause());
+    }
+
+    private void push(int nonterminal, int line) {
+        if (shared || depth == nonterminals.length) {
+            int size = Math.max(8, depth * 2);
+            nonterminals = java.util.Arrays.copyOf(nonterminals, size);
+            lines = java.util.Arrays.copyOf(lines, size);
+        }
+        nonterminals[depth] = nonterminal;
+        lines[depth] = line;
+        depth++;
+    }
+
+    /* Number of context frames recorded so far. */
+    public int depth() {
+        return depth;
+    }
+
+    @Override
+    public String getMessage() {
+        if (depth == 0) {
+            return message;
+        }
+        return frameMessage(depth - 1);
+    }
+
+    @Override
+    public synchronized Throwable getCause() {
+        if (depth == 0) {
+            return rootCause;
+        }
+        return new ParseFailure(this, depth - 1);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    @Override
+    public String toTraceString() {
+        StringBuffer buffer = new StringBuffer();
+        int maxDepth = MAX_TRACE_DEPTH;
+        int frame = depth - 1;
+        while (frame >= 0 && maxDepth-- > 0) {
+            buffer.append("\tCaused by ").append(frameMessage(frame)).append("\r\n");
+            frame--;
+        }
+        if (frame < 0 && maxDepth-- > 0) {
+            buffer.append("\tCaused by ").append(message).append("\r\n");
+            Throwable err = rootCause;
+            while (err != null && maxDepth-- > 0) {
+                buffer.append("\tCaused by ").append(err.getMessage()).append("\r\n");
+                err = err.getCause();
+            }
+        }
+
+        if (maxDepth < 1) {
+            buffer.append("\t ... etc.\r\n");
+        }
+
+        return buffer.toString();
+    }
+
+    private String frameMessage(int frame) {
+        return "in " + Nonterminal.getName(nonterminals[frame]) + " on line: " + lines[frame];
+    }
+}
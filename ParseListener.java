@@ -0,0 +1,16 @@
+/* Receives the parser's events as they happen. Nonterminals are identified by the ids in
+Nonterminal and terminals are the Token the parser has just accepted, so dispatching an event
+allocates nothing. A Generate forwards its events to every listener it was created with. */
+
+public interface ParseListener {
+
+    void commenceNonterminal(int nonterminal);
+
+    void finishNonterminal(int nonterminal);
+
+    void insertTerminal(Token token);
+
+    /* The parse is over, whether or not it finished every nonterminal it began. */
+    default void parseEnded() {
+    }
+}
@@ -0,0 +1,316 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.*;
+
+/* Profiling for the front end, switched on with the "parser.metrics" system property. When it is
+off only enabled() runs (Generate.fromProperties calls it, so the class is loaded, but the
+global instance and its shutdown hook are never created): no listener is added and
+SyntaxAnalyser does not wrap the scanner, so the parser runs exactly as without it.
+
+When it is on, every parse gets a Session listener that times each nonterminal from its BEGIN
+to its END and keeps, per nonterminal, a count, the total time, the self time (total minus the
+time in nested nonterminals) and a histogram of times in power-of-two buckets. A StatementList
+nests once per ';', so its total counts the same time many times over; its self time is the
+one to read. Percentiles are the upper bounds of their buckets. Sessions are
+plain arrays owned by one parse. A session is added to the totals when its parse ends, i.e.
+when its outermost nonterminal finishes or, after an error, when SyntaxAnalyser.parse returns,
+and is then cleared, so memory does not grow with the number of parses. Each scanner
+is wrapped to count tokens and the time spent in getNextToken, giving the lexer's tokens per
+second.
+
+The same data is available to JDK Flight Recorder as a compiler.Nonterminal event per
+nonterminal and a compiler.Scan event per file; they are only created while a recording has
+them enabled, e.g. java -XX:StartFlightRecording=filename=parse.jfr -Dparser.metrics=true Compile.
+
+The summary is printed to System.err when the JVM exits, which is the end of Compile.go (it
+ends with System.exit); dump() prints it at any other time. */
+
+public class ParseMetrics {
+
+    private static final int BUCKETS = 64;
+
+    /* Created, and its shutdown hook registered, on first use, so that calling enabled() costs
+    no more than loading this class. */
+    private static class Global {
+        static final ParseMetrics metrics = new ParseMetrics();
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> metrics.dump(System.err), "parse-metrics"));
+        }
+    }
+
+    /* Totals of every ended parse, guarded by this. */
+    private final long[] counts = new long[Nonterminal.count + 1];
+    private final long[] totalNanos = new long[Nonterminal.count + 1];
+    private final long[] selfNanos = new long[Nonterminal.count + 1];
+    private final long[] histogram = new long[(Nonterminal.count + 1) * BUCKETS];
+    private long tokens;
+    private long parseNanos;
+    private long parses;
+    private final LongAdder scannedFiles = new LongAdder();
+    private final LongAdder scannedTokens = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+
+    public static boolean enabled() {
+        return Boolean.getBoolean("parser.metrics");
+    }
+
+    public static ParseMetrics global() {
+        return Global.metrics;
+    }
+
+    /* A listener for one parse; give it to that parse's Generate. */
+    public Session session() {
+        return new Session(this);
+    }
+
+    /* Adds a session's parse to the totals. */
+    private synchronized void add(Session session) {
+        for (int n = 1; n <= Nonterminal.count; n++) {
+            counts[n] += session.counts[n];
+            totalNanos[n] += session.totalNanos[n];
+            selfNanos[n] += session.selfNanos[n];
+        }
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] += session.histogram[i];
+        }
+        tokens += session.tokens;
+        parseNanos += session.lastEvent - session.firstEvent;
+        parses++;
+    }
+
+    /** Times one parse. Not thread-safe: each parse gets its own. */
+    public static class Session implements ParseListener {
+
+        private static final EventType NONTERMINAL_EVENT = EventType.getEventType(NonterminalEvent.class);
+
+        private final ParseMetrics owner;
+        private final long[] counts = new long[Nonterminal.count + 1];
+        private final long[] totalNanos = new long[Nonterminal.count + 1];
+        private final long[] selfNanos = new long[Nonterminal.count + 1];
+        private final long[] histogram = new long[(Nonterminal.count + 1) * BUCKETS];
+        private long tokens;
+        private long firstEvent;
+        private long lastEvent;
+
+        /* Open nonterminals: start time, time spent in nested ones, tokens seen at start and
+        the Flight Recorder event if one is being recorded. */
+        private int depth;
+        private long[] starts = new long[64];
+        private long[] nested = new long[64];
+        private long[] tokensAtStart = new long[64];
+        private NonterminalEvent[] events = new NonterminalEvent[64];
+
+        Session(ParseMetrics owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public void commenceNonterminal(int nonterminal) {
+            long now = System.nanoTime();
+            if (firstEvent == 0) {
+                firstEvent = now;
+            }
+            lastEvent = now;
+            if (depth == starts.length) {
+                starts = Arrays.copyOf(starts, depth * 2);
+                nested = Arrays.copyOf(nested, depth * 2);
+                tokensAtStart = Arrays.copyOf(tokensAtStart, depth * 2);
+                events = Arrays.copyOf(events, depth * 2);
+            }
+            starts[depth] = now;
+            nested[depth] = 0;
+            tokensAtStart[depth] = tokens;
+            if (NONTERMINAL_EVENT.isEnabled()) {
+                NonterminalEvent event = new NonterminalEvent();
+                event.begin();
+                events[depth] = event;
+            }
+            depth++;
+        }
+
+        @Override
+        public void finishNonterminal(int nonterminal) {
+            long now = System.nanoTime();
+            lastEvent = now;
+            depth--;
+            long elapsed = now - starts[depth];
+            counts[nonterminal]++;
+            totalNanos[nonterminal] += elapsed;
+            selfNanos[nonterminal] += elapsed - nested[depth];
+            histogram[nonterminal * BUCKETS + bucket(elapsed)]++;
+            if (depth > 0) {
+                nested[depth - 1] += elapsed;
+            }
+            NonterminalEvent event = events[depth];
+            if (event != null) {
+                events[depth] = null;
+                event.end();
+                if (event.shouldCommit()) {
+                    event.nonterminal = Nonterminal.getName(nonterminal);
+                    event.tokens = tokens - tokensAtStart[depth];
+                    event.commit();
+                }
+            }
+            if (depth == 0) {
+                parseEnded();
+            }
+        }
+
+        @Override
+        public void insertTerminal(Token token) {
+            tokens++;
+        }
+
+        /* Adds what was timed so far to the totals and starts again from zero. Nonterminals still
+        open (the parse stopped at an error) are dropped. */
+        @Override
+        public void parseEnded() {
+            if (firstEvent == 0) {
+                return;
+            }
+            owner.add(this);
+            Arrays.fill(counts, 0);
+            Arrays.fill(totalNanos, 0);
+            Arrays.fill(selfNanos, 0);
+            Arrays.fill(histogram, 0);
+            Arrays.fill(events, 0, depth, null);
+            tokens = 0;
+            firstEvent = 0;
+            lastEvent = 0;
+            depth = 0;
+        }
+    }
+
+    /* Power-of-two bucket of a time: bucket b holds times below 2^b ns. */
+    private static int bucket(long nanos) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(0, nanos));
+    }
+
+/* Wraps a scanner to count its tokens and the time spent producing them, and records a
+compiler.Scan event for the file when it reaches the end. */
+
+    public TokenSource meter(String fileName, TokenSource source) {
+        scannedFiles.increment();
+        ScanEvent event = new ScanEvent();
+        event.begin();
+        return new TokenSource() {
+            private long count;
+            private long nanos;
+            private boolean finished;
+
+            @Override
+            public Token getNextToken() throws IOException {
+                long start = System.nanoTime();
+                Token token = source.getNextToken();
+                long elapsed = System.nanoTime() - start;
+                count++;
+                nanos += elapsed;
+                scannedTokens.increment();
+                scanNanos.add(elapsed);
+                if (token.symbol == Token.eofSymbol && !finished) {
+                    finished = true;
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.file = fileName;
+                        event.tokens = count;
+                        event.scanNanos = nanos;
+                        event.commit();
+                    }
+                }
+                return token;
+            }
+        };
+    }
+
+    /* Prints the totals of every parse so far. */
+    public void dump(PrintStream out) {
+        long[] counts;
+        long[] total;
+        long[] self;
+        long[] histogram;
+        long tokens;
+        long parseNanos;
+        long parses;
+        synchronized (this) {
+            counts = this.counts.clone();
+            total = totalNanos.clone();
+            self = selfNanos.clone();
+            histogram = this.histogram.clone();
+            tokens = this.tokens;
+            parseNanos = this.parseNanos;
+            parses = this.parses;
+        }
+        if (parses == 0 && scannedFiles.sum() == 0) {
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        Formatter f = new Formatter(text);
+        f.format("parse metrics: %d parses, %d tokens accepted in %.1f ms (%.2f M tokens/s)%n",
+                parses, tokens, parseNanos / 1e6, perSecond(tokens, parseNanos) / 1e6);
+        long lexed = scannedTokens.sum();
+        long lexNanos = scanNanos.sum();
+        f.format("lexer: %d files, %d tokens in %.1f ms (%.2f M tokens/s)%n",
+                scannedFiles.sum(), lexed, lexNanos / 1e6, perSecond(lexed, lexNanos) / 1e6);
+        f.format("%-20s %10s %11s %11s %9s %9s %9s%n", "nonterminal", "count", "total ms", "self ms", "mean us", "p50 us", "p99 us");
+        for (int n = 1; n <= Nonterminal.count; n++) {
+            if (counts[n] == 0) {
+                continue;
+            }
+            f.format("%-20s %10d %11.2f %11.2f %9.2f %9.2f %9.2f%n", Nonterminal.getName(n), counts[n], total[n] / 1e6,
+                    self[n] / 1e6, total[n] / 1e3 / counts[n], percentile(histogram, n, counts[n], 0.5) / 1e3,
+                    percentile(histogram, n, counts[n], 0.99) / 1e3);
+        }
+        out.print(text);
+        out.flush();
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos <= 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    /* Upper bound (in ns) of the bucket holding the given fraction of a nonterminal's times. */
+    private static double percentile(long[] histogram, int nonterminal, long count, double fraction) {
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram[nonterminal * BUCKETS + b];
+            if (seen >= target) {
+                return Math.pow(2, b);
+            }
+        }
+        return Math.pow(2, BUCKETS);
+    }
+
+    @Name("compiler.Nonterminal")
+    @Label("Nonterminal")
+    @Category("Compiler")
+    @Description("Parsing of one nonterminal, from its BEGIN to its END")
+    @StackTrace(false)
+    public static class NonterminalEvent extends jdk.jfr.Event {
+        @Label("Nonterminal")
+        String nonterminal;
+
+        @Label("Tokens")
+        long tokens;
+    }
+
+    @Name("compiler.Scan")
+    @Label("Scan")
+    @Category("Compiler")
+    @Description("Scanning of one file, from opening it to its EOF token")
+    @StackTrace(false)
+    public static class ScanEvent extends jdk.jfr.Event {
+        @Label("File")
+        String file;
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Time in getNextToken")
+        @Timespan(Timespan.NANOSECONDS)
+        long scanNanos;
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.concurrent.locks.*;
+
+/* Runs a scanner on its own thread so lexing overlaps with parsing. The lexer thread is the only
+producer and the parser the only consumer of a bounded ring buffer, which holds each token as a
+symbol, a line number and an identifier's name id in int arrays plus a reference to its text. Each side publishes its
+position with a release store and caches the other side's position, so the two threads only
+touch shared state when the ring looks full or empty. A full ring makes the lexer wait
+(backpressure); an empty one makes the parser wait.
+
+After the EOF token the lexer thread stops and every further call returns EOF again, as the
+scanners do. close() stops the lexer early, e.g. when parsing fails halfway through a file, and an
+IOException thrown by the scanner is rethrown to the parser once it reaches that point. */
+
+public class PipelinedTokenSource implements TokenSource, Closeable {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 20_000;
+
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(PipelinedTokenSource.class, "head", long.class);
+            TAIL = lookup.findVarHandle(PipelinedTokenSource.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final TokenSource source;
+    private final int mask;
+    private final int[] symbols;
+    private final int[] lines;
+    private final String[] texts;
+    private final int[] nameIds;
+
+    /* Next slot the parser reads; written by the parser only. */
+    private volatile long head;
+    /* Next slot the lexer writes; written by the lexer only. */
+    private volatile long tail;
+    /* Each side's last view of the other's position. */
+    private long cachedTail;
+    private long cachedHead;
+
+    private final Thread producer;
+    /* The parser thread, set before it parks so the lexer can wake it. */
+    private volatile Thread consumer;
+    private volatile boolean consumerWaiting;
+    private volatile boolean closed;
+    private volatile boolean finished;
+    private volatile IOException failure;
+
+    /* The parser's last token for each symbol, reused while symbol, line and text stay the same. */
+    private final Token[] lastTokens = new Token[Token.forSymbol + 1];
+    private Token eofToken;
+
+    public PipelinedTokenSource(TokenSource source) {
+        this(source, DEFAULT_CAPACITY);
+    }
+
+    /** capacity is rounded up to a power of two. */
+    public PipelinedTokenSource(TokenSource source, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.source = source;
+        this.mask = size - 1;
+        this.symbols = new int[size];
+        this.lines = new int[size];
+        this.texts = new String[size];
+        this.nameIds = new int[size];
+        this.producer = new Thread(this::produce, "lexer");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    /* Body of the lexer thread. */
+    private void produce() {
+        try {
+            long position = tail;
+            while (!closed) {
+                Token token = source.getNextToken();
+                int attempt = 0;
+                while (position - cachedHead > mask) {
+                    cachedHead = (long) HEAD.getAcquire(this);
+                    if (position - cachedHead > mask) {
+                        if (closed) {
+                            return;
+                        }
+                        pause(attempt++);
+                    }
+                }
+                int slot = (int) position & mask;
+                symbols[slot] = token.symbol;
+                lines[slot] = token.lineNumber;
+                texts[slot] = token.text;
+                nameIds[slot] = token instanceof IdentifierToken ? ((IdentifierToken) token).nameId : -1;
+                position++;
+                TAIL.setRelease(this, position);
+                if (consumerWaiting) {
+                    LockSupport.unpark(consumer);
+                }
+                if (token.symbol == Token.eofSymbol) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException | Error e) {
+            failure = new IOException("lexer failed", e);
+        } finally {
+            finished = true;
+            Thread waiting = consumer;
+            if (waiting != null) {
+                LockSupport.unpark(waiting);
+            }
+        }
+    }
+
+    @Override
+    public Token getNextToken() throws IOException {
+        if (eofToken != null) {
+            return eofToken;
+        }
+        long position = head;
+        if (position == cachedTail) {
+            int attempt = 0;
+            while (position == (cachedTail = (long) TAIL.getAcquire(this))) {
+                if (finished && position == (long) TAIL.getAcquire(this)) {
+                    IOException e = failure;
+                    throw e != null ? e : new EOFException("lexer stopped before EOF");
+                }
+                if (attempt < SPINS) {
+                    pause(attempt++);
+                } else {
+                    consumer = Thread.currentThread();
+                    consumerWaiting = true;
+                    if (position == (long) TAIL.getAcquire(this) && !finished) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    consumerWaiting = false;
+                }
+            }
+        }
+        int slot = (int) position & mask;
+        int symbol = symbols[slot];
+        int line = lines[slot];
+        String text = texts[slot];
+        int nameId = nameIds[slot];
+        texts[slot] = null;
+        HEAD.setRelease(this, position + 1);
+
+        boolean cached = symbol > 0 && symbol < lastTokens.length;
+        Token token = cached ? lastTokens[symbol] : null;
+        if (token == null || token.lineNumber != line || !token.text.equals(text)) {
+            token = nameId >= 0 ? new IdentifierToken(text, line, nameId) : new Token(symbol, text, line);
+            if (cached) {
+                lastTokens[symbol] = token;
+            }
+        }
+        if (symbol == Token.eofSymbol) {
+            eofToken = token;
+        }
+        return token;
+    }
+
+    /* Waits a little for the other side: spin at first, then park briefly. */
+    private static void pause(int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** Stops the lexer thread; tokens not yet read are dropped. */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(producer);
+    }
+}
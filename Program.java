@@ -0,0 +1,400 @@
+import java.util.*;
+
+/* The statements of a parsed program as a small tree of objects, built from a complete
+SyntaxTree, for the stages that run a program rather than check it: ExpressionOptimizer
+rewrites it, Interpreter walks it and BytecodeGenerate compiles it to a JVM class.
+
+Every value is a number (a double) or text. A variable holds text if the program assigns a
+string constant to it or compares it with one, or compares it with another variable that holds
+text; every other variable holds a number. Variables start as 0 or "". Expressions are folded
+left to right as the grammar reads them, so a - b + c is (a - b) + c, and + - * / % are the
+double operators, so / does not truncate and % is the remainder of a truncated division.
+
+The two procedures are built in: call get(a, b) reads a value into each argument and
+call put(a, b) writes each argument's value, both through a ProgramIO. Using text in
+arithmetic, comparing text with a number or calling any other procedure is an error, reported
+as an IllegalArgumentException naming the line. */
+
+public class Program {
+
+    /* Statement kinds. */
+    public static final int ASSIGN = 1;
+    public static final int IF = 2;
+    public static final int WHILE = 3;
+    public static final int UNTIL = 4;
+    public static final int FOR = 5;
+    public static final int GET = 6;
+    public static final int PUT = 7;
+
+    /* Expression kinds; a binary expression's kind is its operator's Token symbol. */
+    public static final int CONSTANT = -1;
+    public static final int VARIABLE = -2;
+
+    /* left % right where right is a constant power of two from 1 to 2^62, computed by remainder
+    rather than a division; only ExpressionOptimizer creates these. */
+    public static final int POWER_OF_TWO_REMAINDER = -3;
+
+    private final String[] names;
+    private final boolean[] texts;
+    private final List<Statement> statements;
+
+    Program(String[] names, boolean[] texts, List<Statement> statements) {
+        this.names = names;
+        this.texts = texts;
+        this.statements = statements;
+    }
+
+    /* Variables are numbered from 0 in the order the program first mentions them. */
+    public int variableCount() {
+        return names.length;
+    }
+
+    public String name(int variable) {
+        return names[variable];
+    }
+
+    public boolean holdsText(int variable) {
+        return texts[variable];
+    }
+
+    public List<Statement> statements() {
+        return statements;
+    }
+
+    /** A statement; which fields are used depends on its kind. */
+    public static final class Statement {
+        public final int kind;
+        public final int line;
+
+        /* ASSIGN: variable := expression, or variable := text when text is not null. */
+        public int variable;
+        public Expression expression;
+        public String text;
+
+        /* IF, WHILE, UNTIL and FOR. */
+        public Condition condition;
+        public List<Statement> body;
+
+        /* IF: the else part, empty if there is none. */
+        public List<Statement> otherwise;
+
+        /* FOR: the assignments before the loop and after each pass. */
+        public Statement initial;
+        public Statement step;
+
+        /* GET and PUT. */
+        public int[] arguments;
+
+        Statement(int kind, int line) {
+            this.kind = kind;
+            this.line = line;
+        }
+    }
+
+    /** variable operator right, where right is an expression or, when text is not null, text. */
+    public static final class Condition {
+        public final int line;
+        public final int variable;
+        public final int operator;
+        public Expression right;
+        public String text;
+
+        Condition(int line, int variable, int operator) {
+            this.line = line;
+            this.variable = variable;
+            this.operator = operator;
+        }
+    }
+
+    /** A constant, a variable, or left operator right with the operator's Token symbol as kind. */
+    public static final class Expression {
+        public final int kind;
+        public final double value;
+        public final int variable;
+        public final Expression left;
+        public final Expression right;
+
+        private Expression(int kind, double value, int variable, Expression left, Expression right) {
+            this.kind = kind;
+            this.value = value;
+            this.variable = variable;
+            this.left = left;
+            this.right = right;
+        }
+
+        public static Expression constant(double value) {
+            return new Expression(CONSTANT, value, -1, null, null);
+        }
+
+        public static Expression variable(int variable) {
+            return new Expression(VARIABLE, 0, variable, null, null);
+        }
+
+        public static Expression binary(int operator, Expression left, Expression right) {
+            return new Expression(operator, 0, -1, left, right);
+        }
+
+        public boolean isLeaf() {
+            return kind == CONSTANT || kind == VARIABLE;
+        }
+    }
+
+/* x % modulus, the same double as Java's %, for modulus a power of two from 1 to 2^62: x less
+the multiple of modulus found by truncating x / modulus. Dividing by a power of two and the
+truncation are exact, and the remainder is always a double, so the subtraction is exact too;
+copySign gives a zero remainder x's sign as % does. Once |x / modulus| reaches 2^52, x is a
+multiple of modulus. */
+
+    public static double remainder(double x, double modulus) {
+        double quotient = x * (1 / modulus);
+        if (Math.abs(quotient) < 0x1p52) {
+            return Math.copySign(x - modulus * (long) quotient, x);
+        }
+        return Double.isFinite(x) ? Math.copySign(0.0, x) : Double.NaN;
+    }
+
+    /* ---- building from a syntax tree ---- */
+
+/* Builds the program a successful parse recorded in tree. Throws IllegalArgumentException if
+the tree is incomplete or the program misuses text or calls an unknown procedure. */
+
+    public static Program from(SyntaxTree tree) {
+        if (!tree.complete()) {
+            throw new IllegalArgumentException("the parse did not succeed");
+        }
+        return new Builder(tree).build();
+    }
+
+    private static final class Builder {
+        private final SyntaxTree tree;
+        /* The variable of each name id in the tree's SymbolTable, or NONE, and each variable's name. */
+        private int[] variables;
+        private final List<String> names = new ArrayList<>();
+        private final int get;
+        private final int put;
+        private final List<Statement> assignments = new ArrayList<>();
+        private final List<Condition> conditions = new ArrayList<>();
+        /* Variables read by expressions, and where, to check once the text variables are known. */
+        private final List<Expression> reads = new ArrayList<>();
+        private final List<Integer> readLines = new ArrayList<>();
+
+        Builder(SyntaxTree tree) {
+            this.tree = tree;
+            variables = new int[tree.symbols().size()];
+            Arrays.fill(variables, SyntaxTree.NONE);
+            get = tree.symbols().find("get");
+            put = tree.symbols().find("put");
+        }
+
+        Program build() {
+            int root = tree.root();
+            List<Statement> statements = statementList(tree.child(root, Nonterminal.statementList));
+            boolean[] texts = inferTexts();
+            check(texts);
+            return new Program(names.toArray(new String[0]), texts, statements);
+        }
+
+        private List<Statement> statementList(int list) {
+            List<Statement> statements = new ArrayList<>();
+            for (int node = list; node != SyntaxTree.NONE; node = tree.child(node, Nonterminal.statementList)) {
+                statements.add(statement(tree.firstChild(tree.child(node, Nonterminal.statement))));
+            }
+            return statements;
+        }
+
+        private Statement statement(int node) {
+            switch (tree.kind(node)) {
+                case Nonterminal.assignmentStatement:
+                    return assignment(node);
+                case Nonterminal.ifStatement: {
+                    Statement statement = new Statement(IF, tree.line(node));
+                    statement.condition = condition(tree.child(node, Nonterminal.condition));
+                    int then = tree.child(node, Nonterminal.statementList);
+                    statement.body = statementList(then);
+                    int otherwise = nextOfKind(then, Nonterminal.statementList);
+                    statement.otherwise = otherwise == SyntaxTree.NONE ? new ArrayList<>() : statementList(otherwise);
+                    return statement;
+                }
+                case Nonterminal.whileStatement:
+                case Nonterminal.untilStatement: {
+                    Statement statement = new Statement(tree.kind(node) == Nonterminal.whileStatement ? WHILE : UNTIL, tree.line(node));
+                    statement.condition = condition(tree.child(node, Nonterminal.condition));
+                    statement.body = statementList(tree.child(node, Nonterminal.statementList));
+                    return statement;
+                }
+                case Nonterminal.forStatement: {
+                    Statement statement = new Statement(FOR, tree.line(node));
+                    int initial = tree.child(node, Nonterminal.assignmentStatement);
+                    statement.initial = assignment(initial);
+                    statement.condition = condition(tree.child(node, Nonterminal.condition));
+                    statement.step = assignment(nextOfKind(initial, Nonterminal.assignmentStatement));
+                    statement.body = statementList(tree.child(node, Nonterminal.statementList));
+                    return statement;
+                }
+                case Nonterminal.procedureStatement:
+                    return call(node);
+                default:
+                    throw new IllegalStateException("unexpected " + tree.name(node));
+            }
+        }
+
+        private Statement assignment(int node) {
+            Statement statement = new Statement(ASSIGN, tree.line(node));
+            int target = tree.firstChild(node);
+            statement.variable = variable(target);
+            int value = tree.nextSibling(tree.nextSibling(target));
+            if (tree.kind(value) == -Token.stringConstant) {
+                statement.text = tree.text(value);
+            } else {
+                statement.expression = expression(value);
+            }
+            assignments.add(statement);
+            return statement;
+        }
+
+        private Statement call(int node) {
+            int name = tree.nameId(tree.child(node, -Token.identifier));
+            int kind = name == get ? GET : name == put ? PUT : 0;
+            if (kind == 0) {
+                throw error(tree.line(node), "unknown procedure " + tree.symbols().name(name) + "; only get and put are built in");
+            }
+            Statement statement = new Statement(kind, tree.line(node));
+            List<Integer> arguments = new ArrayList<>();
+            for (int list = tree.child(node, Nonterminal.argumentList); list != SyntaxTree.NONE;
+                    list = tree.child(list, Nonterminal.argumentList)) {
+                arguments.add(variable(tree.firstChild(list)));
+            }
+            statement.arguments = arguments.stream().mapToInt(Integer::intValue).toArray();
+            return statement;
+        }
+
+        private Condition condition(int node) {
+            int left = tree.firstChild(node);
+            int operator = tree.nextSibling(left);
+            int right = tree.nextSibling(operator);
+            Condition condition = new Condition(tree.line(node), variable(left), -tree.kind(tree.firstChild(operator)));
+            switch (-tree.kind(right)) {
+                case Token.stringConstant:
+                    condition.text = tree.text(right);
+                    break;
+                case Token.numberConstant:
+                    condition.right = Expression.constant(Double.parseDouble(tree.text(right)));
+                    break;
+                default:
+                    condition.right = Expression.variable(variable(right));
+                    break;
+            }
+            conditions.add(condition);
+            return condition;
+        }
+
+/* Term and Factor children come flat, operand (operator operand)*, and are folded left to right. */
+
+        private Expression expression(int node) {
+            int child = tree.firstChild(node);
+            Expression result = operand(child);
+            int operator = tree.nextSibling(child);
+            while (operator != SyntaxTree.NONE) {
+                child = tree.nextSibling(operator);
+                result = Expression.binary(-tree.kind(operator), result, operand(child));
+                operator = tree.nextSibling(child);
+            }
+            return result;
+        }
+
+        private Expression operand(int node) {
+            switch (tree.kind(node)) {
+                case Nonterminal.term:
+                    return expression(node);
+                case Nonterminal.factor: {
+                    int inner = tree.firstChild(node);
+                    switch (tree.kind(inner)) {
+                        case -Token.identifier:
+                            reads.add(Expression.variable(variable(inner)));
+                            readLines.add(tree.line(inner));
+                            return reads.get(reads.size() - 1);
+                        case -Token.numberConstant:
+                            return Expression.constant(Double.parseDouble(tree.text(inner)));
+                        default:
+                            return expression(tree.child(node, Nonterminal.expression));
+                    }
+                }
+                default:
+                    throw new IllegalStateException("unexpected " + tree.name(node));
+            }
+        }
+
+        private int nextOfKind(int node, int kind) {
+            for (int next = tree.nextSibling(node); next != SyntaxTree.NONE; next = tree.nextSibling(next)) {
+                if (tree.kind(next) == kind) {
+                    return next;
+                }
+            }
+            return SyntaxTree.NONE;
+        }
+
+        /* The variable an identifier node names, numbering it if this is its first mention. */
+        private int variable(int node) {
+            int name = tree.nameId(node);
+            if (name >= variables.length) {
+                int length = variables.length;
+                variables = Arrays.copyOf(variables, Math.max(name + 1, length * 2));
+                Arrays.fill(variables, length, variables.length, SyntaxTree.NONE);
+            }
+            int variable = variables[name];
+            if (variable == SyntaxTree.NONE) {
+                variable = names.size();
+                variables[name] = variable;
+                names.add(tree.symbols().name(name));
+            }
+            return variable;
+        }
+
+        /* Marks the variables given text, then spreads the mark along variable comparisons. */
+        private boolean[] inferTexts() {
+            boolean[] texts = new boolean[names.size()];
+            for (Statement assignment : assignments) {
+                texts[assignment.variable] |= assignment.text != null;
+            }
+            for (Condition condition : conditions) {
+                texts[condition.variable] |= condition.text != null;
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Condition condition : conditions) {
+                    if (condition.right != null && condition.right.kind == VARIABLE) {
+                        int other = condition.right.variable;
+                        if (texts[condition.variable] != texts[other]) {
+                            texts[condition.variable] = texts[other] = true;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            return texts;
+        }
+
+        private void check(boolean[] texts) {
+            for (Statement assignment : assignments) {
+                if (assignment.text == null && texts[assignment.variable]) {
+                    throw error(assignment.line, names.get(assignment.variable) + " holds text and cannot be assigned a number");
+                }
+            }
+            for (int i = 0; i < reads.size(); i++) {
+                if (texts[reads.get(i).variable]) {
+                    throw error(readLines.get(i), names.get(reads.get(i).variable) + " holds text and cannot be used in arithmetic");
+                }
+            }
+            for (Condition condition : conditions) {
+                if (texts[condition.variable] && condition.right != null && condition.right.kind == CONSTANT) {
+                    throw error(condition.line, names.get(condition.variable) + " holds text and cannot be compared with a number");
+                }
+            }
+        }
+
+        private static IllegalArgumentException error(int line, String message) {
+            return new IllegalArgumentException("line " + line + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.io.*;
+
+/* Where a running program's call get and call put go. The Interpreter and the classes
+BytecodeGenerate compiles call the same methods, so a program prints the same either way. */
+
+public interface ProgramIO {
+
+    double getNumber();
+
+    String getText();
+
+    void put(double value);
+
+    void put(String value);
+
+/* Reads whitespace-separated words from in and prints each value put on its own line, numbers
+without a fraction printed as integers. Reading past the end of the input throws
+java.util.NoSuchElementException. */
+
+    static ProgramIO console(Reader in, PrintStream out) {
+        BufferedReader reader = new BufferedReader(in);
+        return new ProgramIO() {
+            @Override
+            public double getNumber() {
+                return Double.parseDouble(getText());
+            }
+
+            @Override
+            public String getText() {
+                try {
+                    StringBuilder word = new StringBuilder();
+                    int c = reader.read();
+                    while (c >= 0 && Character.isWhitespace(c)) {
+                        c = reader.read();
+                    }
+                    while (c >= 0 && !Character.isWhitespace(c)) {
+                        word.append((char) c);
+                        c = reader.read();
+                    }
+                    if (word.length() == 0) {
+                        throw new java.util.NoSuchElementException("no more input");
+                    }
+                    return word.toString();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void put(double value) {
+                out.println(format(value));
+            }
+
+            @Override
+            public void put(String value) {
+                out.println(value);
+            }
+        };
+    }
+
+    static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,7 @@
+/* A program ready to run: an Interpreter, or a class compiled by BytecodeGenerate. Each run
+starts with every variable at 0 or "", so one runner can be run any number of times. */
+
+public interface ProgramRunner {
+
+    void run(ProgramIO io);
+}
@@ -0,0 +1,104 @@
+/* The 16 reserved words of the language (the ones LexicalAnalyser.initialiseScanner registers),
+looked up straight from the scanner's character buffer. A switch on the word's length and first
+letter leaves at most four candidates, each compared character by character while folding ASCII
+case, so a lookup needs no String, no toLowerCase and no linear scan of a table.
+
+Folding with | 0x20 is safe here because the scanner only passes runs of letters and digits:
+it maps 'A'-'Z' onto 'a'-'z' and leaves digits and non-ASCII letters unequal to any keyword
+letter, matching what String.toLowerCase().equals(...) decides for these keywords. */
+
+public class ReservedWords {
+
+    /* Lower-case spelling of each reserved word symbol, indexed by Token symbol. */
+    private static final String[] spellings = new String[Token.forSymbol + 1];
+
+    static {
+        spellings[Token.beginSymbol] = "begin";
+        spellings[Token.callSymbol] = "call";
+        spellings[Token.doSymbol] = "do";
+        spellings[Token.elseSymbol] = "else";
+        spellings[Token.endSymbol] = "end";
+        spellings[Token.floatSymbol] = "float";
+        spellings[Token.ifSymbol] = "if";
+        spellings[Token.integerSymbol] = "integer";
+        spellings[Token.isSymbol] = "is";
+        spellings[Token.loopSymbol] = "loop";
+        spellings[Token.procedureSymbol] = "procedure";
+        spellings[Token.stringSymbol] = "string";
+        spellings[Token.thenSymbol] = "then";
+        spellings[Token.untilSymbol] = "until";
+        spellings[Token.whileSymbol] = "while";
+        spellings[Token.forSymbol] = "for";
+    }
+
+    private ReservedWords() {
+    }
+
+    /** Returns the reserved word symbol spelt by buf[start, start + length) in any case, or Token.identifier. */
+    public static int lookup(char[] buf, int start, int length) {
+        char first = (char) (buf[start] | 0x20);
+        switch (length) {
+            case 2:
+                if (first == 'd') return match(buf, start, length, Token.doSymbol);
+                if (first == 'i') {
+                    char second = (char) (buf[start + 1] | 0x20);
+                    if (second == 'f') return Token.ifSymbol;
+                    if (second == 's') return Token.isSymbol;
+                }
+                return Token.identifier;
+            case 3:
+                if (first == 'e') return match(buf, start, length, Token.endSymbol);
+                if (first == 'f') return match(buf, start, length, Token.forSymbol);
+                return Token.identifier;
+            case 4:
+                switch (first) {
+                    case 'c': return match(buf, start, length, Token.callSymbol);
+                    case 'e': return match(buf, start, length, Token.elseSymbol);
+                    case 'l': return match(buf, start, length, Token.loopSymbol);
+                    case 't': return match(buf, start, length, Token.thenSymbol);
+                    default: return Token.identifier;
+                }
+            case 5:
+                switch (first) {
+                    case 'b': return match(buf, start, length, Token.beginSymbol);
+                    case 'f': return match(buf, start, length, Token.floatSymbol);
+                    case 'u': return match(buf, start, length, Token.untilSymbol);
+                    case 'w': return match(buf, start, length, Token.whileSymbol);
+                    default: return Token.identifier;
+                }
+            case 6:
+                return first == 's' ? match(buf, start, length, Token.stringSymbol) : Token.identifier;
+            case 7:
+                return first == 'i' ? match(buf, start, length, Token.integerSymbol) : Token.identifier;
+            case 9:
+                return first == 'p' ? match(buf, start, length, Token.procedureSymbol) : Token.identifier;
+            default:
+                return Token.identifier;
+        }
+    }
+
+    /** Returns the lower-case spelling of a reserved word symbol, or null for any other symbol. */
+    public static String spelling(int symbol) {
+        return symbol > 0 && symbol < spellings.length ? spellings[symbol] : null;
+    }
+
+    /** True if buf[start, start + length) is the reserved word's spelling exactly, already in lower case. */
+    public static boolean isLowerCase(char[] buf, int start, int length, int symbol) {
+        String word = spellings[symbol];
+        for (int i = 0; i < length; i++) {
+            if (buf[start + i] != word.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /* Checks the remaining letters of a candidate whose length and first letter already match. */
+    private static int match(char[] buf, int start, int length, int symbol) {
+        String word = spellings[symbol];
+        for (int i = 1; i < length; i++) {
+            if ((char) (buf[start + i] | 0x20) != word.charAt(i))
+                return Token.identifier;
+        }
+        return symbol;
+    }
+}
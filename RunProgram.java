@@ -0,0 +1,79 @@
+import java.io.*;
+import java.nio.file.*;
+
+/* Runs a program rather than just checking it: parses the file, compiles it with
+BytecodeGenerate and runs it, reading call get's values from standard input and printing
+call put's values, one per line.
+
+    java RunProgram [-interpret] [-unoptimized] [-report] [-dump file.class] program
+
+-interpret runs the program with the Interpreter instead, and -dump also writes the compiled
+class, which javap -c -v will disassemble. The program goes through the ExpressionOptimizer
+first unless -unoptimized is given, and -report prints what that saved to standard error. A
+parse failure is printed as Compile would print it to res.txt, and a program the backend
+rejects (text used in arithmetic, say) as its error. A program too large for one class is run by
+the Interpreter, as BytecodeGenerate.compile does, and is not dumped. */
+
+public class RunProgram {
+
+    public static void main(String[] args) throws IOException {
+        boolean interpret = false;
+        boolean optimize = true;
+        boolean report = false;
+        String dump = null;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-interpret":
+                    interpret = true;
+                    break;
+                case "-unoptimized":
+                    optimize = false;
+                    break;
+                case "-report":
+                    report = true;
+                    break;
+                case "-dump":
+                    dump = args[++i];
+                    break;
+                default:
+                    file = args[i];
+            }
+        }
+        if (file == null) {
+            System.err.println("usage: java RunProgram [-interpret] [-unoptimized] [-report] [-dump file.class] program");
+            System.exit(2);
+        }
+
+        BytecodeGenerate generate = new BytecodeGenerate();
+        new SyntaxAnalyser(file, generate).parse(System.err);
+        if (!generate.tree().complete()) {
+            System.exit(1);
+        }
+        ProgramRunner runner;
+        try {
+            Program program = generate.program();
+            if (optimize) {
+                ExpressionOptimizer optimizer = new ExpressionOptimizer();
+                program = optimizer.optimize(program);
+                if (report) {
+                    System.err.println(file + ": " + optimizer.report());
+                }
+            }
+            if (dump != null) {
+                try {
+                    Files.write(Paths.get(dump), BytecodeGenerate.classFile(program));
+                } catch (ClassWriter.ClassTooLargeException e) {
+                    System.err.println(file + ": no class to dump, " + e.getMessage());
+                }
+            }
+            runner = interpret ? new Interpreter(program) : BytecodeGenerate.compile(program);
+        } catch (IllegalArgumentException e) {
+            System.err.println(file + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        runner.run(ProgramIO.console(new InputStreamReader(System.in), System.out));
+        System.out.flush();
+    }
+}
@@ -0,0 +1,35 @@
+/* A Generate for pure validation: no trace and no listeners. Every event method is empty, so
+once the JIT sees only this type at the parser's call sites the event calls inline to nothing.
+Errors are still thrown with the usual message, just not printed. */
+
+public class SilentGenerate extends Generate {
+
+    public SilentGenerate() {
+        super(null, false);
+    }
+
+    @Override
+    public void commenceNonterminal(int nonterminal) {
+    }
+
+    @Override
+    public void finishNonterminal(int nonterminal) {
+    }
+
+    @Override
+    public void terminalAccepted(Token token) {
+    }
+
+    @Override
+    public void parseEnded() {
+    }
+
+    @Override
+    public void reportSuccess() {
+    }
+
+    @Override
+    public void reportError(Token token, String explanatoryMessage) throws CompilationException {
+        throw new ParseFailure(errorMessage(token, explanatoryMessage));
+    }
+}
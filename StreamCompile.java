@@ -0,0 +1,48 @@
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/* Driver that compiles programs as they are streamed in, without writing them to files first:
+
+    generator | java StreamCompile             compiles standard input
+    java StreamCompile - prog.fifo other.txt    compiles each in turn ("-" is standard input)
+
+Each input is read through a StreamLexicalAnalyser, so named pipes work as well as files and
+the trace is printed while the input is still arriving. Output has the same shape as Compile's:
+312START, then for each input a 312FILE line naming it and its trace, then 312FINISH, with the
+Compilation Exceptions written to res.txt. The trace property selects the generator as usual. */
+
+public class StreamCompile {
+
+    public static void main(String[] args) throws IOException {
+        String[] inputs = args.length == 0 ? new String[] {"-"} : args;
+        System.out.println("312START");
+        try (PrintStream res = new PrintStream(new FileOutputStream("res.txt"))) {
+            for (String input : inputs) {
+                System.out.println();
+                System.out.println("312FILE " + input);
+                compile(input, System.out, res);
+            }
+        }
+        System.out.println();
+        System.out.println("312FINISH");
+    }
+
+/* Compiles one input, writing its trace to out and its result to res. */
+
+    public static void compile(String input, PrintStream out, PrintStream res) throws IOException {
+        if (input.equals("-")) {
+            compile(Channels.newChannel(System.in), out, res);
+        } else {
+            try (ReadableByteChannel channel = Files.newByteChannel(Paths.get(input))) {
+                compile(channel, out, res);
+            }
+        }
+    }
+
+    public static void compile(ReadableByteChannel in, PrintStream out, PrintStream res) throws IOException {
+        Generate generate = Generate.fromProperties(out);
+        new SyntaxAnalyser(in, generate).parse(res);
+        out.flush();
+    }
+}
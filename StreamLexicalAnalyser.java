@@ -0,0 +1,326 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.Arrays;
+
+/* A scanner that produces exactly the tokens LexicalAnalyser does, reading from a pipe, socket or
+any other stream as the input arrives instead of from a named file. Bytes are decoded a read at
+a time into a fixed-size window of characters, so tokens are handed to the parser while the rest
+of the input is still on its way and memory does not grow with the input: the window holds the
+unscanned input plus the text of the token being scanned, and only grows (to fit that token)
+when a single string constant, identifier or number is longer than the whole window.
+
+Decoding uses the default charset and replaces malformed input, like FileReader, and line
+endings are normalised the way ArrayLexicalAnalyser does it: "\r\n" and "\r" become '\n', and a
+last line without a terminator still ends with '\n'. A "\r\n" split across two reads is still
+one line break. Fixed-text tokens are flyweights reused on the same line, as in
+ArrayLexicalAnalyser, so callers must treat the tokens as read-only. Identifiers are interned in
+a SymbolTable and come as IdentifierTokens, so apart from the window the scanner keeps one
+String per distinct name. The stream belongs to the
+caller, who closes it. */
+
+public class StreamLexicalAnalyser implements TokenSource {
+
+    /** The EOF character, as in LexicalAnalyser. */
+    private static final char EOF = '\000';
+
+    /** Window size used by the constructors that do not take one, in characters. */
+    public static final int DEFAULT_WINDOW = 8192;
+
+    private final ReadableByteChannel in;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    /* The channel has reported its end, and everything read has been decoded. */
+    private boolean inputEnded;
+    private boolean decoderFlushed;
+
+    /* Decoded, normalised input: buf[mark, limit) is still needed, pos is the scanning cursor. */
+    private char[] buf;
+    private int mark;
+    private int pos;
+    private int limit;
+    /* Normalisation state carried between reads: the last character stored, and whether it
+    was a '\r' whose '\n' (if any) has not been seen yet. */
+    private char lastChar = '\n';
+    private boolean afterCR;
+    private boolean empty = true;
+
+    private int currentLineNumber;
+
+    /* Flyweights for fixed-text symbols, indexed by symbol and valid for their line only. */
+    private final Token[] fixedTokens = new Token[Token.forSymbol + 1];
+    /* The identifier names seen. */
+    private final SymbolTable symbols;
+
+    /** Creates a scanner over a stream, with the default window. */
+    public StreamLexicalAnalyser(InputStream in) {
+        this(Channels.newChannel(in), DEFAULT_WINDOW);
+    }
+
+    /** Creates a scanner over a channel, with the default window. */
+    public StreamLexicalAnalyser(ReadableByteChannel in) {
+        this(in, DEFAULT_WINDOW);
+    }
+
+    /** Creates a scanner over a channel that decodes into a window of the given number of characters. */
+    public StreamLexicalAnalyser(ReadableByteChannel in, int window) {
+        this(in, window, new SymbolTable());
+    }
+
+    /** Creates a scanner as above that interns identifiers in symbols. */
+    public StreamLexicalAnalyser(ReadableByteChannel in, int window, SymbolTable symbols) {
+        if (window < 16) {
+            throw new IllegalArgumentException("window too small: " + window);
+        }
+        this.in = in;
+        this.decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(window);
+        this.bytes.flip();
+        this.buf = new char[window];
+        this.symbols = symbols;
+    }
+
+    /** Returns the next token, the same one LexicalAnalyser.getNextToken would return. */
+    @Override
+    public Token getNextToken() throws IOException {
+        mark = pos;
+        char c = peek();
+
+        while ((c == ' ') || (c == '\t') || (c == '\n') || (c == '-')) {
+            if (c == '-') {
+                c = next();
+                if (c == '-') {
+                    while (c != '\n') {
+                        mark = pos;
+                        c = next();
+                    }
+                } else {
+                    return fixed(Token.minusSymbol, "-");
+                }
+            }
+
+            if (c == '\n')
+                currentLineNumber++;
+            mark = pos + 1;
+            c = next();
+        }
+
+        mark = pos;
+        if (Character.isLetter(c)) {
+            do
+                c = next();
+            while (Character.isLetter(c) || Character.isDigit(c));
+            int length = pos - mark;
+            int symbol = ReservedWords.lookup(buf, mark, length);
+            if (symbol == Token.identifier) {
+                int id = symbols.intern(buf, mark, length);
+                return new IdentifierToken(symbols.name(id), currentLineNumber, id);
+            }
+            if (ReservedWords.isLowerCase(buf, mark, length, symbol))
+                return fixed(symbol, ReservedWords.spelling(symbol));
+            return new Token(symbol, new String(buf, mark, length), currentLineNumber);
+        } else if (Character.isDigit(c)) {
+            do
+                c = next();
+            while (Character.isDigit(c));
+            if (c == '.') {
+                do
+                    c = next();
+                while (Character.isDigit(c));
+            }
+            return new Token(Token.numberConstant, new String(buf, mark, pos - mark), currentLineNumber);
+        } else if (c == '"') {
+            mark = ++pos;
+            while (available() && buf[pos] != '"')
+                pos++;
+            Token token = new Token(Token.stringConstant, new String(buf, mark, pos - mark), currentLineNumber);
+            if (available())
+                pos++;
+            return token;
+        }
+
+        switch (c) {
+            case ':':
+                return pair('=', Token.becomesSymbol, ":=", Token.colonSymbol, ":");
+            case '>':
+                return pair('=', Token.greaterEqualSymbol, ">=", Token.greaterThanSymbol, ">");
+            case '<':
+                return pair('=', Token.lessEqualSymbol, "<=", Token.lessThanSymbol, "<");
+            case '!':
+                if (next() == '=') {
+                    pos++;
+                    return fixed(Token.notEqualSymbol, "!=");
+                }
+                /* like LexicalAnalyser, a lone '!' also swallows the character after it */
+                if (available())
+                    pos++;
+                return fixed(Token.errorSymbol, "");
+            case '=':
+                return single(Token.equalSymbol, "=");
+            case ',':
+                return single(Token.commaSymbol, ",");
+            case ';':
+                return single(Token.semicolonSymbol, ";");
+            case '+':
+                return single(Token.plusSymbol, "+");
+            case '/':
+                return single(Token.divideSymbol, "/");
+            case '%':
+                return single(Token.modSymbol, "%");
+            case '*':
+                return single(Token.timesSymbol, "*");
+            case '(':
+                return single(Token.leftParenthesis, "(");
+            case ')':
+                return single(Token.rightParenthesis, ")");
+            case EOF:
+                return fixed(Token.eofSymbol, "");
+            default:
+                pos++;
+                return fixed(Token.errorSymbol, "");
+        }
+    }
+
+    private Token single(int symbol, String text) {
+        pos++;
+        return fixed(symbol, text);
+    }
+
+    /* A one-character token that becomes a two-character one when followed by second. */
+    private Token pair(char second, int longSymbol, String longText, int shortSymbol, String shortText) throws IOException {
+        if (next() == second) {
+            pos++;
+            return fixed(longSymbol, longText);
+        }
+        return fixed(shortSymbol, shortText);
+    }
+
+    /* The shared token for a fixed-text symbol on the current line. */
+    private Token fixed(int symbol, String text) {
+        Token token = fixedTokens[symbol];
+        if (token == null || token.lineNumber != currentLineNumber) {
+            token = new Token(symbol, text, currentLineNumber);
+            fixedTokens[symbol] = token;
+        }
+        return token;
+    }
+
+    /* The character at the cursor, or EOF at the end of the input. */
+    private char peek() throws IOException {
+        return available() ? buf[pos] : EOF;
+    }
+
+    /* Moves the cursor on by one and returns the character there. */
+    private char next() throws IOException {
+        pos++;
+        return peek();
+    }
+
+    /* Whether there is a character at the cursor, reading more input if needed. */
+    private boolean available() throws IOException {
+        while (pos >= limit) {
+            if (decoderFlushed) {
+                return false;
+            }
+            fill();
+        }
+        return true;
+    }
+
+/* Makes room after limit, dropping everything before mark (or growing the window if the
+current token fills it), and decodes what has arrived. It only reads when nothing is left to
+decode, and then only once: waiting for a full window would hold back tokens that are already
+here. At least two chars are kept free, so a character outside the BMP, which decodes to a
+surrogate pair, always fits; should the decoder still overflow without progress, the window
+grows. The decoder is flushed only once decoding with the end of input has underflowed, i.e.
+every byte has been decoded. The channel must be in blocking mode. */
+
+    private void fill() throws IOException {
+        if (mark > 0) {
+            System.arraycopy(buf, mark, buf, 0, limit - mark);
+            pos -= mark;
+            limit -= mark;
+            mark = 0;
+        }
+        if (buf.length - limit < 2) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int start = limit;
+        CharBuffer chars = CharBuffer.wrap(buf, limit, buf.length - limit);
+        while (true) {
+            CoderResult result = decoder.decode(bytes, chars, inputEnded);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (chars.position() > start) {
+                break;
+            }
+            if (result.isOverflow()) {
+                chars = grow(chars);
+                continue;
+            }
+            if (inputEnded) {
+                while (decoder.flush(chars).isOverflow()) {
+                    chars = grow(chars);
+                }
+                decoderFlushed = true;
+                break;
+            }
+            bytes.compact();
+            inputEnded = in.read(bytes) < 0;
+            bytes.flip();
+        }
+        limit = normalise(start, chars.position());
+        if (decoderFlushed && !empty && lastChar != '\n') {
+            if (limit == buf.length) {
+                buf = Arrays.copyOf(buf, limit + 1);
+            }
+            buf[limit++] = '\n';
+            lastChar = '\n';
+        }
+    }
+
+    /* Doubles the window, returning a buffer over its free part from where chars had got to. */
+    private CharBuffer grow(CharBuffer chars) {
+        buf = Arrays.copyOf(buf, buf.length * 2);
+        return CharBuffer.wrap(buf, chars.position(), buf.length - chars.position());
+    }
+
+    /* Turns the line endings in buf[from, to) into '\n' in place; returns the new end. */
+    private int normalise(int from, int to) {
+        int out = from;
+        for (int i = from; i < to; i++) {
+            char c = buf[i];
+            if (c == '\n' && afterCR) {
+                afterCR = false;
+                continue;
+            }
+            afterCR = c == '\r';
+            if (afterCR) {
+                c = '\n';
+            }
+            buf[out++] = c;
+            lastChar = c;
+            empty = false;
+        }
+        return out;
+    }
+
+    /** The line count at the current position, i.e. the line number of the token returned last. */
+    public int lineNumber() {
+        return currentLineNumber;
+    }
+
+    /** The table the scanner interns identifiers in. */
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    /** The current size of the window, in characters. */
+    public int windowSize() {
+        return buf.length;
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/* Interns identifiers: gives each distinct name a dense int id, 0, 1, 2, ... in the order the
+names are first seen, so the stages after the scanner can keep what they know about a name in
+arrays indexed by its id and tell two names apart with ==.
+
+The table is open-addressed: an int array of ids (id + 1, 0 for an empty slot) probed linearly
+from a Fibonacci hash of the name, doubled whenever it is half full, beside the hash and String
+of each id. It costs a few words per distinct name however often each occurs, and looking up a
+name already seen straight from a scanner's character buffer allocates nothing.
+
+The table creates every name's String itself, so a String that is name(id) by reference came
+from this table; id(Token) relies on that to trust an IdentifierToken's id without hashing its
+text. A table is not safe for use by several threads at once. */
+
+public class SymbolTable {
+
+    /* Not found, from find. */
+    public static final int NONE = -1;
+
+    private int[] slots;
+    private int shift;
+    private int[] hashes;
+    private String[] names;
+    private int size;
+
+    public SymbolTable() {
+        this(64);
+    }
+
+    public SymbolTable(int expectedNames) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedNames - 1)) << 2;
+        slots = new int[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity - 1);
+        hashes = new int[capacity / 2];
+        names = new String[capacity / 2];
+    }
+
+    /* The number of distinct names, which is also the next id to be given. */
+    public int size() {
+        return size;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    /** Returns the id of buf[start, start + length), adding the name if it is new. */
+    public int intern(char[] buf, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        int slot = (hash * 0x9E3779B9) >>> shift;
+        for (int entry; (entry = slots[slot]) != 0; slot = (slot + 1) & (slots.length - 1)) {
+            int id = entry - 1;
+            if (hashes[id] == hash && equals(names[id], buf, start, length)) {
+                return id;
+            }
+        }
+        return add(slot, hash, new String(buf, start, length));
+    }
+
+    /** Returns the id of name, adding it if it is new. */
+    public int intern(CharSequence name) {
+        int id = find(name);
+        if (id == NONE) {
+            String text = new String(name.toString());
+            int hash = text.hashCode();
+            int slot = (hash * 0x9E3779B9) >>> shift;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            id = add(slot, hash, text);
+        }
+        return id;
+    }
+
+    /** Returns the id of name, or NONE if the table has not seen it. */
+    public int find(CharSequence name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        for (int slot = (hash * 0x9E3779B9) >>> shift, entry; (entry = slots[slot]) != 0;
+                slot = (slot + 1) & (slots.length - 1)) {
+            int id = entry - 1;
+            if (hashes[id] == hash && names[id].contentEquals(name)) {
+                return id;
+            }
+        }
+        return NONE;
+    }
+
+/* The id of an identifier token's name: the id it carries if it is an IdentifierToken from this
+table, otherwise the id its text interns to. */
+
+    public int id(Token token) {
+        if (token instanceof IdentifierToken) {
+            int id = ((IdentifierToken) token).nameId;
+            if (id >= 0 && id < size && names[id] == token.text) {
+                return id;
+            }
+        }
+        return intern(token.text);
+    }
+
+    private int add(int slot, int hash, String name) {
+        if (size == names.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+        int id = size++;
+        hashes[id] = hash;
+        names[id] = name;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        shift--;
+        for (int id = 0; id < size; id++) {
+            int slot = (hashes[id] * 0x9E3779B9) >>> shift;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static boolean equals(String name, char[] buf, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,4 +1,6 @@
 import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
 
 /* Implements a recursive descent parser by extending AbstractSyntaxAnalyser.
 Parses a simple Ada-like language per the provided grammar, tracing parsing actions with Generate
@@ -6,13 +8,192 @@ and reporting the first syntax error with detailed context via CompilationExcept
 
 public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
 
+    /** Supplies the tokens to parse; used in place of lex. */
+    private final TokenSource tokens;
+    /* A token read ahead by peek, to be returned by the next advance. */
+    private Token peeked;
+
+    /* Kinds of statement list, by what ends them: see closes(). */
+    private static final int PART_LIST = 0;
+    private static final int THEN_LIST = 1;
+    private static final int ELSE_LIST = 2;
+    private static final int LOOP_LIST = 3;
+    private static final int UNTIL_LIST = 4;
+
+    private static final int NO_LINE = -1;
+
+    /* Error recovery state: the open nonterminals with the line each reports (NO_LINE for the
+    line of the failing token), the kinds of the open statement lists, the errors so far, and
+    the error that ended the parse, if any. */
+    private boolean recovering = Boolean.getBoolean("parser.recover");
+    private int[] frames = new int[64];
+    private int[] frameLines = new int[64];
+    private int frameCount;
+    private int[] contexts = new int[16];
+    private int contextCount;
+    private final List<CompilationException> errors = new ArrayList<>();
+    private CompilationException abandoned;
+
 /* Parses the whole program starting with "begin" and ending with "end".
 This is the entry point to check the program’s structure using a try-catch to handle errors
 and trace the process. */
 
     public SyntaxAnalyser(String filename) throws IOException {
-        this.lex = new LexicalAnalyser(filename);
-        this.myGenerate = new Generate();
+        this(filename, Generate.fromProperties());
+    }
+
+/* Lets the caller choose how the trace is produced, e.g. a BufferedGenerate for large inputs. */
+
+    public SyntaxAnalyser(String filename, Generate generate) throws IOException {
+        this(openScanner(filename, null, generate.symbols()), generate);
+    }
+
+/* Parses source bytes already read from filename, e.g. by CompileCache, with the scanner the
+"lexer" property names, as the constructors above do. ArrayLexicalAnalyser scans the bytes
+themselves; the provided LexicalAnalyser can only read a file, so it reads filename again. */
+
+    public SyntaxAnalyser(String filename, byte[] source, Generate generate) throws IOException {
+        this(openScanner(filename, source, generate.symbols()), generate);
+    }
+
+/* Parses tokens from any source, e.g. an ArrayLexicalAnalyser over text already in memory. */
+
+    public SyntaxAnalyser(TokenSource tokens, Generate generate) {
+        this.tokens = tokens;
+        this.myGenerate = generate;
+    }
+
+/* Parses a program as it arrives on a stream, e.g. a pipe, with a StreamLexicalAnalyser. Memory
+stays bounded by the scanner's window and the nesting of the program, not the length of the
+input, and with a Generate that prints as it goes the trace comes out while the input is still
+being read. The stream is left open for the caller to close. */
+
+    public SyntaxAnalyser(InputStream in, Generate generate) {
+        this(Channels.newChannel(in), generate);
+    }
+
+    public SyntaxAnalyser(ReadableByteChannel in, Generate generate) {
+        this(instrument("<stream>", generate.symbols() == null ? new StreamLexicalAnalyser(in)
+                : new StreamLexicalAnalyser(in, StreamLexicalAnalyser.DEFAULT_WINDOW, generate.symbols())), generate);
+    }
+
+/* Opens the scanner named by the "lexer" system property: "array" for ArrayLexicalAnalyser,
+"words" for ArrayLexicalAnalyser scanning word-at-a-time, anything else for the provided
+LexicalAnalyser. The array scanners scan source if it is not null, else the file, and intern
+identifiers in symbols if that is not null. With no "lexer" set, a Generate that supplies
+symbols gets ArrayLexicalAnalyser too, since LexicalAnalyser's plain Tokens carry no ids. */
+
+    private static TokenSource openScanner(String filename, byte[] source, SymbolTable symbols) throws IOException {
+        TokenSource scanner;
+        String lexer = System.getProperty("lexer");
+        if ("array".equals(lexer) || "words".equals(lexer) || (lexer == null && symbols != null)) {
+            boolean wordAtATime = "words".equals(lexer);
+            if (symbols == null) {
+                symbols = new SymbolTable();
+            }
+            scanner = source != null ? ArrayLexicalAnalyser.ofBytes(source, symbols, wordAtATime) : ArrayLexicalAnalyser.fromFile(filename, symbols, wordAtATime);
+        } else {
+            LexicalAnalyser lex = new LexicalAnalyser(filename);
+            scanner = lex::getNextToken;
+        }
+        return instrument(filename, scanner);
+    }
+
+/* With "lexer.pipelined" set the scanner runs on its own thread through a PipelinedTokenSource,
+when there is a spare core to run it on, and with "parser.metrics" set it is timed by
+ParseMetrics. */
+
+    private static TokenSource instrument(String name, TokenSource scanner) {
+        if (ParseMetrics.enabled()) {
+            scanner = ParseMetrics.global().meter(name, scanner);
+        }
+        if (Boolean.getBoolean("lexer.pipelined") && Runtime.getRuntime().availableProcessors() > 1) {
+            scanner = new PipelinedTokenSource(scanner);
+        }
+        return scanner;
+    }
+
+    @Override
+    public void parse(PrintStream ps) throws IOException {
+
+/* Same steps as AbstractSyntaxAnalyser.parse, but keeps the generator chosen in the constructor
+instead of replacing it with a new Generate. With the "parser" system property set to "table"
+the program is parsed by TableDrivenParser instead of the methods below. */
+
+        try {
+            if ("table".equals(System.getProperty("parser")) && !recovering) {
+                new TableDrivenParser(tokens, myGenerate).parseProgram();
+            } else {
+                nextToken = advance();
+                _statementPart_();
+                acceptTerminal(Token.eofSymbol);
+            }
+            if (errors.isEmpty()) {
+                myGenerate.reportSuccess();
+            }
+        } catch (CompilationException ex) {
+            if (!recovering) {
+                ps.println("Compilation Exception");
+                ps.println(ex.toTraceString());
+            } else {
+                if (ex != abandoned) {
+                    record(ex);
+                }
+                while (frameCount > 0) {
+                    myGenerate.finishNonterminal(frames[--frameCount]);
+                }
+            }
+        } finally {
+            myGenerate.parseEnded();
+            if (tokens instanceof Closeable) {
+                ((Closeable) tokens).close();
+            }
+        }
+        for (CompilationException error : errors) {
+            ps.println("Compilation Exception");
+            ps.println(error.toTraceString());
+        }
+    }
+
+/* Turns error recovery on or off for the next parse; by default it follows the "parser.recover"
+system property. With recovery on, a syntax error inside a statement is recorded with the
+context it would have been reported with, the statement is abandoned, and parsing resumes at
+the next point where the enclosing statement lists can be picked up again:
+
+    ";"                  the next statement of the list
+    "end" + closer       the end of the list, where closer is what the construct expects after
+                         "end" ("if" or "loop"; for the program, anything else, so that what
+                         follows its "end" is reported as coming before the end of the file)
+    "else" / "until"     the end of an if's then part or of a do's body
+
+A closer of any enclosing list also ends the current list, so its construct reports what it is
+missing and recovery carries on one level out; any other token (including a "loop" or "end"
+that belongs to a construct already skipped) is skipped. A statement followed by neither ";"
+nor a closer is reported as missing its ";", and the list goes on at the next ";" or at the
+next token that starts a statement. An "end" met there ends an if's or loop's list as usual,
+but at the top level an "end if" or "end loop" closes nothing and is skipped. Reaching the end
+of the file while skipping stops the parse. Every error is printed as its own Compilation
+Exception in the order found, the trace stays balanced (abandoned nonterminals still get their
+312END, also those left open when an error stops the parse), and
+312SUCCESS is only reported for a program without errors. Recovery always uses this class's
+recursive parser, not TableDrivenParser. */
+
+    public void setRecovery(boolean recovering) {
+        this.recovering = recovering;
+    }
+
+    /* The errors the last parse recorded in recovery mode, in the order found. */
+    public List<CompilationException> errors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+/* Parses a single Statement from the token source and returns the token after it. This is the
+entry point IncrementalParser uses to reparse just the statement an edit touched. */
+
+    Token parseStatement() throws IOException, CompilationException {
+        nextToken = advance();
+        _statement_();
+        return nextToken;
     }
 
     @Override
@@ -22,34 +203,129 @@ and trace the process. */
 This processes multiple statements in the program by calling itself recursively after
 a semicolon to continue parsing. */
 
-        myGenerate.commenceNonterminal("StatementPart");
+        begin(Nonterminal.statementPart);
         try {
             acceptTerminal(Token.beginSymbol);
-            _statementList_();
+            _statementList_(PART_LIST);
             acceptTerminal(Token.endSymbol);
         } catch (CompilationException e) {
-            throw new CompilationException("in StatementPart on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.statementPart, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("StatementPart");
+        end(Nonterminal.statementPart);
     }
 
-    private void _statementList_() throws IOException, CompilationException {
+    private void _statementList_(int context) throws IOException, CompilationException {
 
-/* Decides which type of statement to parse based on the next token.
-This is essential to support different statement types like "if" or "while".
-It uses a switch to pick the right method or report an error. */
+/* Handles a list of statements separated by semicolons if present.
+Each semicolon opens another nested StatementList, exactly as the grammar's right recursion would,
+but the nesting is counted in a loop so long lists use constant stack depth. context says which
+tokens end the list, for error recovery. */
+
+        int depth = 0;
+        int base = frameCount;
+        if (recovering) {
+            pushContext(context);
+        }
+        try {
+            while (true) {
+                begin(Nonterminal.statementList);
+                depth++;
+                if (!recovering) {
+                    _statement_();
+                } else if (!recoverableStatement(base + depth)) {
+                    break;
+                }
+                if (nextToken.symbol != Token.semicolonSymbol && !(recovering && missingSemicolon())) {
+                    break;
+                }
+                if (nextToken.symbol == Token.semicolonSymbol) {
+                    acceptTerminal(Token.semicolonSymbol);
+                }
+            }
+        } catch (CompilationException e) {
+            throw ParseFailure.wrap(e, Nonterminal.statementList, nextToken.lineNumber, depth);
+        } finally {
+            if (recovering) {
+                contextCount--;
+            }
+        }
+        for (int i = 0; i < depth; i++) {
+            end(Nonterminal.statementList);
+        }
+    }
 
-        myGenerate.commenceNonterminal("StatementList");
+/* Parses a statement in recovery mode. After an error it closes the statement's open
+nonterminals down to level and skips to a token the lists can resume at; returns false if
+that token ends the list. */
+
+    private boolean recoverableStatement(int level) throws IOException, CompilationException {
         try {
             _statement_();
-            if (nextToken.symbol == Token.semicolonSymbol) {
-                acceptTerminal(Token.semicolonSymbol);
-                _statementList_();
+            return true;
+        } catch (CompilationException e) {
+            if (e == abandoned) {
+                throw e;
+            }
+            record(e);
+            while (frameCount > level) {
+                myGenerate.finishNonterminal(frames[--frameCount]);
+            }
+            while (true) {
+                if (nextToken.symbol == Token.semicolonSymbol) {
+                    return true;
+                }
+                if (nextToken.symbol == Token.eofSymbol) {
+                    abandoned = e;
+                    throw e;
+                }
+                if (closesAny()) {
+                    return false;
+                }
+                nextToken = advance();
             }
+        }
+    }
+
+/* In recovery mode, called when a statement is followed by neither ";" nor a token that ends an
+open list, i.e. its ";" is missing. Records the error and skips to where the list can go on: a
+";", or a token that starts a statement, taken as if the ";" had been there. Returns false,
+leaving the list, at a closer of an open list, at the end of the file, or at any "end" inside
+an if or loop, whose construct then reports the wrong word after it. At the top level an "end"
+followed by "if" or "loop" is stray (e.g. the "end loop" of a loop whose header was skipped)
+and is skipped with that word; any other "end" there ends the program. */
+
+    private boolean missingSemicolon() throws IOException, CompilationException {
+        if (nextToken.symbol == Token.eofSymbol || endsList()) {
+            return false;
+        }
+        try {
+            acceptTerminal(Token.semicolonSymbol);
         } catch (CompilationException e) {
-            throw new CompilationException("in StatementList on line: " + nextToken.lineNumber, e);
+            record(e);
+        }
+        while (true) {
+            switch (nextToken.symbol) {
+                case Token.semicolonSymbol:
+                case Token.identifier:
+                case Token.callSymbol:
+                case Token.ifSymbol:
+                case Token.whileSymbol:
+                case Token.doSymbol:
+                case Token.forSymbol:
+                    return true;
+                case Token.eofSymbol:
+                    return false;
+                default:
+                    if (endsList()) {
+                        return false;
+                    }
+                    boolean end = nextToken.symbol == Token.endSymbol;
+                    nextToken = advance();
+                    if (end && (nextToken.symbol == Token.ifSymbol || nextToken.symbol == Token.loopSymbol)) {
+                        nextToken = advance();
+                    }
+            }
         }
-        myGenerate.finishNonterminal("StatementList");
     }
 
     private void _statement_() throws IOException, CompilationException {
@@ -57,7 +333,7 @@ It uses a switch to pick the right method or report an error. */
 /* Decides which type of statement to parse based on the next token to support different 
 statement types like "if" or "while". */
 
-        myGenerate.commenceNonterminal("Statement");
+        begin(Nonterminal.statement);
         try {
             switch (nextToken.symbol) {
                 case Token.identifier:
@@ -82,9 +358,9 @@ statement types like "if" or "while". */
                     myGenerate.reportError(nextToken, "Expected a statement on line: " + nextToken.lineNumber);
             }
         } catch (CompilationException e) {
-            throw new CompilationException("in Statement on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.statement, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("Statement");
+        end(Nonterminal.statement);
     }
 
     private void _assignmentStatement_() throws IOException, CompilationException {
@@ -92,7 +368,7 @@ statement types like "if" or "while". */
 /* Parses an assignment to check if a variable is set to a value or string as per the grammar.
 It chooses between an expression or string constant based on the token. */
 
-        myGenerate.commenceNonterminal("AssignmentStatement");
+        begin(Nonterminal.assignmentStatement);
         try {
             acceptTerminal(Token.identifier);
             acceptTerminal(Token.becomesSymbol);
@@ -102,9 +378,9 @@ It chooses between an expression or string constant based on the token. */
                 _expression_();
             }
         } catch (CompilationException e) {
-            throw new CompilationException("in AssignmentStatement on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.assignmentStatement, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("AssignmentStatement");
+        end(Nonterminal.assignmentStatement);
     }
 
     private void _ifStatement_() throws IOException, CompilationException {
@@ -113,22 +389,22 @@ It chooses between an expression or string constant based on the token. */
 and calling other methods for parts.*/
 
         int lineNumber = nextToken.lineNumber;
-        myGenerate.commenceNonterminal("IfStatement");
+        begin(Nonterminal.ifStatement);
         try {
             acceptTerminal(Token.ifSymbol);
             _condition_();
             acceptTerminal(Token.thenSymbol);
-            _statementList_();
+            _statementList_(THEN_LIST);
             if (nextToken.symbol == Token.elseSymbol) {
                 acceptTerminal(Token.elseSymbol);
-                _statementList_();
+                _statementList_(ELSE_LIST);
             }
             acceptTerminal(Token.endSymbol);
             acceptTerminal(Token.ifSymbol);
         } catch (CompilationException e) {
-            throw new CompilationException("in IfStatement on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.ifStatement, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("IfStatement");
+        end(Nonterminal.ifStatement);
     }
 
     private void _whileStatement_() throws IOException, CompilationException {
@@ -137,19 +413,20 @@ and calling other methods for parts.*/
 It tracks the line number for accurate error reporting. */
 
         int lineNumber = nextToken.lineNumber; 
-        myGenerate.commenceNonterminal("WhileStatement");
+        begin(Nonterminal.whileStatement);
         try {
             acceptTerminal(Token.whileSymbol);
             lineNumber = nextToken.lineNumber;
+            markLine();
             _condition_();
             acceptTerminal(Token.loopSymbol);
-            _statementList_();
+            _statementList_(LOOP_LIST);
             acceptTerminal(Token.endSymbol);
             acceptTerminal(Token.loopSymbol);
         } catch (CompilationException e) {
-            throw new CompilationException("in WhileStatement on line: " + lineNumber, e); 
+            throw ParseFailure.wrap(e, Nonterminal.whileStatement, lineNumber); 
         }
-        myGenerate.finishNonterminal("WhileStatement");
+        end(Nonterminal.whileStatement);
     }
 
     private void _procedureStatement_() throws IOException, CompilationException {
@@ -157,7 +434,7 @@ It tracks the line number for accurate error reporting. */
  /* Parses a procedure call. This handles function-like calls in the language.
 It ensures the correct sequence of tokens is followed. */
 
-        myGenerate.commenceNonterminal("ProcedureStatement");
+        begin(Nonterminal.procedureStatement);
         try {
             acceptTerminal(Token.callSymbol);
             acceptTerminal(Token.identifier);
@@ -165,9 +442,9 @@ It ensures the correct sequence of tokens is followed. */
             _argumentList_();
             acceptTerminal(Token.rightParenthesis);
         } catch (CompilationException e) {
-            throw new CompilationException("in ProcedureStatement on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.procedureStatement, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("ProcedureStatement");
+        end(Nonterminal.procedureStatement);
     }
 
     private void _untilStatement_() throws IOException, CompilationException {
@@ -175,16 +452,16 @@ It ensures the correct sequence of tokens is followed. */
 /* Parses a "do-until" loop with statements and a condition. This allows execution until a condition is met.
 It processes the body first, then checks the condition. */
 
-        myGenerate.commenceNonterminal("UntilStatement");
+        begin(Nonterminal.untilStatement);
         try {
             acceptTerminal(Token.doSymbol);
-            _statementList_();
+            _statementList_(UNTIL_LIST);
             acceptTerminal(Token.untilSymbol);
             _condition_();
         } catch (CompilationException e) {
-            throw new CompilationException("in UntilStatement on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.untilStatement, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("UntilStatement");
+        end(Nonterminal.untilStatement);
     }
 
     private void _forStatement_() throws IOException, CompilationException {
@@ -192,7 +469,7 @@ It processes the body first, then checks the condition. */
 /* Parses a "for" loop to support controlled iteration in the program.
 This follows a strict token order to match the grammar. */
 
-        myGenerate.commenceNonterminal("ForStatement");
+        begin(Nonterminal.forStatement);
         try {
             acceptTerminal(Token.forSymbol);
             acceptTerminal(Token.leftParenthesis);
@@ -203,31 +480,38 @@ This follows a strict token order to match the grammar. */
             _assignmentStatement_();
             acceptTerminal(Token.rightParenthesis);
             acceptTerminal(Token.doSymbol);
-            _statementList_();
+            _statementList_(LOOP_LIST);
             acceptTerminal(Token.endSymbol);
             acceptTerminal(Token.loopSymbol);
         } catch (CompilationException e) {
-            throw new CompilationException("in ForStatement on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.forStatement, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("ForStatement");
+        end(Nonterminal.forStatement);
     }
 
     private void _argumentList_() throws IOException, CompilationException {
 
 /* Parses a list of arguments for a procedure call.
-This handles one or more identifiers separated by commas recursively. */
+This handles one or more identifiers separated by commas, nesting one ArgumentList per comma
+in the trace while looping instead of recursing. */
 
-        myGenerate.commenceNonterminal("ArgumentList");
+        int depth = 0;
         try {
-            acceptTerminal(Token.identifier);
-            if (nextToken.symbol == Token.commaSymbol) {
+            while (true) {
+                begin(Nonterminal.argumentList);
+                depth++;
+                acceptTerminal(Token.identifier);
+                if (nextToken.symbol != Token.commaSymbol) {
+                    break;
+                }
                 acceptTerminal(Token.commaSymbol);
-                _argumentList_();
             }
         } catch (CompilationException e) {
-            throw new CompilationException("in ArgumentList on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.argumentList, nextToken.lineNumber, depth);
+        }
+        for (int i = 0; i < depth; i++) {
+            end(Nonterminal.argumentList);
         }
-        myGenerate.finishNonterminal("ArgumentList");
     }
 
     private void _condition_() throws IOException, CompilationException {
@@ -235,7 +519,7 @@ This handles one or more identifiers separated by commas recursively. */
 /* Parses a condition for control statements for loops and if statements to work by checking
 an identifier, operator, and a value. */
 
-        myGenerate.commenceNonterminal("Condition");
+        begin(Nonterminal.condition);
         try {
             acceptTerminal(Token.identifier);
             _conditionalOperator_();
@@ -247,9 +531,9 @@ an identifier, operator, and a value. */
                 myGenerate.reportError(nextToken, "Expected identifier, number, or string after conditional operator on line: " + nextToken.lineNumber);
             }
         } catch (CompilationException e) {
-            throw new CompilationException("in Condition on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.condition, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("Condition");
+        end(Nonterminal.condition);
     }
 
     private void _conditionalOperator_() throws IOException, CompilationException {
@@ -257,7 +541,7 @@ an identifier, operator, and a value. */
 /* Parses operators like ">" or "=" for conditions.
 This ensures valid comparisons in the language.*/
 
-        myGenerate.commenceNonterminal("ConditionalOperator");
+        begin(Nonterminal.conditionalOperator);
         try {
             switch (nextToken.symbol) {
                 case Token.lessThanSymbol:
@@ -272,16 +556,16 @@ This ensures valid comparisons in the language.*/
                     myGenerate.reportError(nextToken, "Expected a conditional operator on line: " + nextToken.lineNumber);
             }
         } catch (CompilationException e) {
-            throw new CompilationException("in ConditionalOperator on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.conditionalOperator, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("ConditionalOperator");
+        end(Nonterminal.conditionalOperator);
     }
 
     private void _expression_() throws IOException, CompilationException {
 
 /* Parses expressions like addition or subtraction to support basic math operations in assignments. */
 
-        myGenerate.commenceNonterminal("Expression");
+        begin(Nonterminal.expression);
         try {
             _term_();
             while (nextToken.symbol == Token.plusSymbol || nextToken.symbol == Token.minusSymbol) {
@@ -289,16 +573,16 @@ This ensures valid comparisons in the language.*/
                 _term_();
             }
         } catch (CompilationException e) {
-            throw new CompilationException("in Expression on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.expression, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("Expression");
+        end(Nonterminal.expression);
     }
 
     private void _term_() throws IOException, CompilationException {
 
 /* Parses terms with multiplication or division. This breaks expressions into smaller parts for clarity. */
 
-        myGenerate.commenceNonterminal("Term");
+        begin(Nonterminal.term);
         try {
             _factor_();
             while (nextToken.symbol == Token.timesSymbol ||
@@ -308,9 +592,9 @@ This ensures valid comparisons in the language.*/
                 _factor_();
             }
         } catch (CompilationException e) {
-            throw new CompilationException("in Term on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.term, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("Term");
+        end(Nonterminal.term);
     }
 
     private void _factor_() throws IOException, CompilationException {
@@ -318,7 +602,7 @@ This ensures valid comparisons in the language.*/
 /* Parses factors and handles the basic building blocks of expressions.
 It checks the token type to decide what to parse. */
 
-        myGenerate.commenceNonterminal("Factor");
+        begin(Nonterminal.factor);
         try {
             if (nextToken.symbol == Token.identifier) {
                 acceptTerminal(Token.identifier);
@@ -332,9 +616,9 @@ It checks the token type to decide what to parse. */
                 myGenerate.reportError(nextToken, "Expected identifier, number, or ( on line: " + nextToken.lineNumber);
             }
         } catch (CompilationException e) {
-            throw new CompilationException("in Factor on line: " + nextToken.lineNumber, e);
+            throw ParseFailure.wrap(e, Nonterminal.factor, nextToken.lineNumber);
         }
-        myGenerate.finishNonterminal("Factor");
+        end(Nonterminal.factor);
     }
 
     @Override
@@ -345,10 +629,112 @@ This validates syntax and advances the token stream.
 It reports an error with token names if there’s a mismatch. */
 
         if (nextToken.symbol == symbol) {
-            myGenerate.insertTerminal(nextToken);
-            nextToken = lex.getNextToken();
+            myGenerate.terminalAccepted(nextToken);
+            nextToken = advance();
         } else {
             myGenerate.reportError(nextToken, "Expected '" + Token.getName(symbol) + "' but found '" + Token.getName(nextToken.symbol) + "' on line: " + nextToken.lineNumber);
         }
     }
+
+    /* True if nextToken ends a statement list of the given kind. */
+    private boolean closes(int context) throws IOException {
+        switch (nextToken.symbol) {
+            case Token.elseSymbol:
+                return context == THEN_LIST;
+            case Token.untilSymbol:
+                return context == UNTIL_LIST;
+            case Token.endSymbol:
+                int after = peek().symbol;
+                switch (context) {
+                    case PART_LIST:
+                        return after != Token.ifSymbol && after != Token.loopSymbol;
+                    case THEN_LIST:
+                    case ELSE_LIST:
+                        return after == Token.ifSymbol;
+                    case LOOP_LIST:
+                        return after == Token.loopSymbol;
+                    default:
+                        return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    /* True if nextToken ends any of the open statement lists. */
+    private boolean closesAny() throws IOException {
+        for (int i = contextCount - 1; i >= 0; i--) {
+            if (closes(contexts[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* True if nextToken ends an open list, or is an "end" inside any list but the program's. */
+    private boolean endsList() throws IOException {
+        return closesAny() || (nextToken.symbol == Token.endSymbol && contexts[contextCount - 1] != PART_LIST);
+    }
+
+    /* Keeps a copy of e with the context of every open nonterminal, as it would have been reported. */
+    private void record(CompilationException e) {
+        ParseFailure failure = ParseFailure.withoutContext(e);
+        for (int i = frameCount - 1; i >= 0; i--) {
+            failure = ParseFailure.wrap(failure, frames[i], frameLines[i] == NO_LINE ? nextToken.lineNumber : frameLines[i]);
+        }
+        errors.add(failure);
+    }
+
+    /* Raises a nonterminal's events, and in recovery mode tracks which nonterminals are open. */
+
+    private void begin(int nonterminal) {
+        myGenerate.commenceNonterminal(nonterminal);
+        if (recovering) {
+            if (frameCount == frames.length) {
+                frames = Arrays.copyOf(frames, frameCount * 2);
+                frameLines = Arrays.copyOf(frameLines, frameCount * 2);
+            }
+            frames[frameCount] = nonterminal;
+            frameLines[frameCount] = NO_LINE;
+            frameCount++;
+        }
+    }
+
+    private void end(int nonterminal) {
+        myGenerate.finishNonterminal(nonterminal);
+        if (recovering) {
+            frameCount--;
+        }
+    }
+
+    /* The innermost nonterminal reports errors at the next token's line rather than the failing one's. */
+    private void markLine() {
+        if (recovering) {
+            frameLines[frameCount - 1] = nextToken.lineNumber;
+        }
+    }
+
+    private void pushContext(int context) {
+        if (contextCount == contexts.length) {
+            contexts = Arrays.copyOf(contexts, contextCount * 2);
+        }
+        contexts[contextCount++] = context;
+    }
+
+    /* The token after nextToken, read ahead without consuming it. */
+    private Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = tokens.getNextToken();
+        }
+        return peeked;
+    }
+
+    private Token advance() throws IOException {
+        Token token = peeked;
+        if (token == null) {
+            return tokens.getNextToken();
+        }
+        peeked = null;
+        return token;
+    }
 }
@@ -0,0 +1,319 @@
+import java.io.*;
+import java.util.Arrays;
+
+/* A ParseListener that builds the syntax tree of a parse. Nodes are ints indexing parallel
+arrays (kind, first child, next sibling, token index and line) rather than objects, so a tree
+of a million nodes is a handful of arrays and walking it costs no garbage.
+
+Nodes are numbered in the order the parser reaches them, which is preorder: the root is node 0,
+every node comes before its children and a node's children come in source order. A terminal's
+kind is minus its Token symbol and a nonterminal's kind is its Nonterminal id, so
+kind(n) > 0 tells them apart. Terminals also have the index of their token among all tokens
+accepted (the first token is 0), which gives their text, and identifiers the id of their name
+in the tree's SymbolTable, so later stages compare names as ints. A nonterminal's line is the
+line of its first token, or of the token before it if it matched no tokens. The parser accepts the
+end-of-file token after finishing StatementPart, so that terminal is the root's next sibling.
+
+To build a tree, give it to the Generate the parser uses, e.g.
+new SyntaxAnalyser(fileName, new Generate(false, tree)). If the parse fails the tree holds the
+nodes reached so far and complete() is false. */
+
+public class SyntaxTree implements ParseListener {
+
+    /* No node: the first child of a terminal, the next sibling of a last child, or the root of an empty tree. */
+    public static final int NONE = -1;
+
+    private int size;
+    private int[] kinds;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] tokenIndexes;
+    private int[] lines;
+
+    private int tokenCount;
+    private String[] texts;
+    /* The name id of each identifier token, NONE for other tokens. */
+    private int[] nameIds;
+    private final SymbolTable symbols;
+
+    /* Nonterminals not finished yet, outermost first, with the last child each has so far. */
+    private int depth;
+    private int[] open = new int[64];
+    private int[] lastChildren = new int[64];
+    private int lastLine;
+    private int lastTopLevel = NONE;
+
+    public SyntaxTree() {
+        this(1024);
+    }
+
+    public SyntaxTree(int expectedNodes) {
+        this(expectedNodes, new SymbolTable());
+    }
+
+/* A tree that numbers names with symbols. Given the table its scanner interns in, the ids come
+straight from the IdentifierTokens without hashing the names again. */
+
+    public SyntaxTree(int expectedNodes, SymbolTable symbols) {
+        this.symbols = symbols;
+        int capacity = Math.max(16, expectedNodes);
+        kinds = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        tokenIndexes = new int[capacity];
+        lines = new int[capacity];
+        texts = new String[capacity / 2];
+        nameIds = new int[capacity / 2];
+    }
+
+    /* Empties the tree so it can record another parse, keeping its arrays and its name ids. */
+    public void clear() {
+        Arrays.fill(texts, 0, tokenCount, null);
+        size = 0;
+        tokenCount = 0;
+        depth = 0;
+        lastLine = 0;
+        lastTopLevel = NONE;
+    }
+
+    /* ---- building ---- */
+
+    @Override
+    public void commenceNonterminal(int nonterminal) {
+        int node = add(nonterminal, NONE, NONE);
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+            lastChildren = Arrays.copyOf(lastChildren, depth * 2);
+        }
+        open[depth] = node;
+        lastChildren[depth] = NONE;
+        depth++;
+    }
+
+    @Override
+    public void finishNonterminal(int nonterminal) {
+        int node = open[--depth];
+        if (lines[node] == NONE) {
+            lines[node] = lastLine;
+        }
+    }
+
+    @Override
+    public void insertTerminal(Token token) {
+        if (tokenCount == texts.length) {
+            texts = Arrays.copyOf(texts, tokenCount * 2);
+            nameIds = Arrays.copyOf(nameIds, tokenCount * 2);
+        }
+        texts[tokenCount] = token.text;
+        nameIds[tokenCount] = token.symbol == Token.identifier ? symbols.id(token) : NONE;
+        add(-token.symbol, tokenCount++, token.lineNumber);
+        lastLine = token.lineNumber;
+
+        /* This is the first token of every open nonterminal that has no line yet; each is set once. */
+        for (int i = depth - 1; i >= 0 && lines[open[i]] == NONE; i--) {
+            lines[open[i]] = token.lineNumber;
+        }
+    }
+
+    private int add(int kind, int tokenIndex, int line) {
+        if (size == kinds.length) {
+            grow();
+        }
+        int node = size++;
+        kinds[node] = kind;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        tokenIndexes[node] = tokenIndex;
+        lines[node] = line;
+        if (depth > 0) {
+            int last = lastChildren[depth - 1];
+            if (last == NONE) {
+                firstChildren[open[depth - 1]] = node;
+            } else {
+                nextSiblings[last] = node;
+            }
+            lastChildren[depth - 1] = node;
+        } else {
+            if (lastTopLevel != NONE) {
+                nextSiblings[lastTopLevel] = node;
+            }
+            lastTopLevel = node;
+        }
+        return node;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        tokenIndexes = Arrays.copyOf(tokenIndexes, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+    }
+
+    /* ---- reading ---- */
+
+    /* True once the root has been finished and the end of the file accepted after it. */
+    public boolean complete() {
+        return depth == 0 && lastTopLevel != NONE && kinds[lastTopLevel] == -Token.eofSymbol;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int root() {
+        return size > 0 ? 0 : NONE;
+    }
+
+    public int kind(int node) {
+        return kinds[node];
+    }
+
+    public boolean isTerminal(int node) {
+        return kinds[node] < 0;
+    }
+
+    /* The Nonterminal id of a nonterminal node. */
+    public int nonterminal(int node) {
+        return kinds[node];
+    }
+
+    /* The Token symbol of a terminal node. */
+    public int symbol(int node) {
+        return -kinds[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /* The position of a terminal's token among all tokens accepted, or NONE for a nonterminal. */
+    public int tokenIndex(int node) {
+        return tokenIndexes[node];
+    }
+
+    public int line(int node) {
+        return lines[node];
+    }
+
+    /* The text of a terminal's token, or null for a nonterminal. */
+    public String text(int node) {
+        return kinds[node] < 0 ? texts[tokenIndexes[node]] : null;
+    }
+
+    /* The id of an identifier's name in symbols(), or NONE for any other node. */
+    public int nameId(int node) {
+        return kinds[node] < 0 ? nameIds[tokenIndexes[node]] : NONE;
+    }
+
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    public String tokenText(int tokenIndex) {
+        return texts[tokenIndex];
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    /* The first child of node with the given kind, or NONE. */
+    public int child(int node, int kind) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            if (kinds[child] == kind) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    /* Name of a node's kind: the nonterminal name or the token name. */
+    public String name(int node) {
+        return kinds[node] < 0 ? Token.getName(-kinds[node]) : Nonterminal.getName(kinds[node]);
+    }
+
+    /** Called for each node of a walk, on the way down and on the way back up. */
+    public interface Visitor {
+        /* Returns false to skip the node's children (exit is still called). */
+        boolean enter(SyntaxTree tree, int node);
+
+        void exit(SyntaxTree tree, int node);
+    }
+
+/* Walks the subtree under node depth first without recursion, so deeply nested programs cannot
+overflow the Java stack; the only allocation is the path stack when it has to grow. */
+
+    public void walk(int node, Visitor visitor) {
+        if (node == NONE) {
+            return;
+        }
+        int[] path = new int[64];
+        int top = 0;
+        int next = node;
+        while (true) {
+            if (top == path.length) {
+                path = Arrays.copyOf(path, top * 2);
+            }
+            path[top++] = next;
+            next = visitor.enter(this, next) ? firstChildren[next] : NONE;
+            while (next == NONE) {
+                int done = path[--top];
+                visitor.exit(this, done);
+                if (top == 0) {
+                    return;
+                }
+                next = nextSiblings[done];
+            }
+        }
+    }
+
+    /* Walks the root and the top-level nodes after it. */
+    public void walk(Visitor visitor) {
+        for (int node = root(); node != NONE; node = nextSiblings[node]) {
+            walk(node, visitor);
+        }
+    }
+
+    /* Prints the tree with one node per line, indented by depth. */
+    public void print(PrintStream out) {
+        StringBuilder line = new StringBuilder();
+        walk(new Visitor() {
+            int indent;
+
+            @Override
+            public boolean enter(SyntaxTree tree, int node) {
+                line.setLength(0);
+                for (int i = 0; i < indent; i++) {
+                    line.append("  ");
+                }
+                line.append(tree.name(node));
+                if (tree.isTerminal(node) && tree.text(node) != null && !tree.text(node).isEmpty()) {
+                    line.append(" '").append(tree.text(node)).append('\'');
+                }
+                line.append(" on line ").append(tree.line(node));
+                out.println(line);
+                indent++;
+                return true;
+            }
+
+            @Override
+            public void exit(SyntaxTree tree, int node) {
+                indent--;
+            }
+        });
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.*;
+import java.util.Arrays;
+
+/* A second parsing engine for the same language: a loop over an explicit int stack driven by
+the LL(1) table in Grammar, where SyntaxAnalyser has one method per nonterminal. The stack holds
+grammar symbols still to match plus an END marker under every expanded trace nonterminal, so
+each step is a table lookup and a few array writes, and nesting depth is bounded by memory
+rather than by the Java stack.
+
+It raises the same Generate events and reports the same errors with the same context as
+SyntaxAnalyser. Open trace nonterminals are kept on a second stack so a failure can be wrapped
+in one frame per nonterminal, innermost first, as SyntaxAnalyser's catch blocks do.
+SyntaxAnalyser.parse uses it when the "parser" system property is "table". */
+
+public class TableDrivenParser {
+
+    /* END + id finishes trace nonterminal id. */
+    private static final int END = 128;
+
+    /* A frame line of NONE means "the line of the token in error". */
+    private static final int NONE = -1;
+
+    private final TokenSource tokens;
+    private final Generate generate;
+    private Token nextToken;
+
+    private int[] stack = new int[256];
+    private int top;
+
+    /* Trace nonterminals begun but not finished, with the line each reports on error. */
+    private int[] frames = new int[64];
+    private int[] frameLines = new int[64];
+    private int frameCount;
+
+    public TableDrivenParser(TokenSource tokens, Generate generate) {
+        this.tokens = tokens;
+        this.generate = generate;
+    }
+
+/* Parses a whole program (a StatementPart followed by the end of the file), raising events on
+the Generate but leaving reportSuccess to the caller, like SyntaxAnalyser.parse. */
+
+    public void parseProgram() throws IOException, CompilationException {
+        nextToken = tokens.getNextToken();
+        top = 0;
+        frameCount = 0;
+        push(Token.eofSymbol);
+        push(Grammar.nt(Nonterminal.statementPart));
+        try {
+            run();
+        } catch (CompilationException e) {
+            CompilationException failure = e;
+            for (int i = frameCount - 1; i >= 0; i--) {
+                failure = ParseFailure.wrap(failure, frames[i], frameLines[i] == NONE ? nextToken.lineNumber : frameLines[i]);
+            }
+            throw failure;
+        }
+    }
+
+    private void run() throws IOException, CompilationException {
+        int[] table = Grammar.table();
+        while (top > 0) {
+            int symbol = stack[--top];
+            if (symbol < Grammar.NONTERMINAL) {
+                if (nextToken.symbol == symbol) {
+                    generate.terminalAccepted(nextToken);
+                    nextToken = tokens.getNextToken();
+                } else {
+                    generate.reportError(nextToken, "Expected '" + Token.getName(symbol) + "' but found '" + Token.getName(nextToken.symbol) + "' on line: " + nextToken.lineNumber);
+                }
+            } else if (symbol >= END) {
+                generate.finishNonterminal(symbol - END);
+                frameCount--;
+            } else if (symbol == Grammar.LINE) {
+                frameLines[frameCount - 1] = nextToken.lineNumber;
+            } else {
+                int nonterminal = symbol - Grammar.NONTERMINAL;
+                if (Grammar.isVisible(nonterminal)) {
+                    generate.commenceNonterminal(nonterminal);
+                    push(END + nonterminal);
+                    openFrame(nonterminal);
+                }
+                int production = table[nonterminal * Grammar.TERMINALS + nextToken.symbol];
+                if (production == Grammar.ERROR) {
+                    generate.reportError(nextToken, Grammar.errorMessage(nonterminal) + nextToken.lineNumber);
+                } else {
+                    int[] right = Grammar.reversed(production);
+                    if (top + right.length > stack.length) {
+                        stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + right.length));
+                    }
+                    System.arraycopy(right, 0, stack, top, right.length);
+                    top += right.length;
+                }
+            }
+        }
+    }
+
+    private void push(int symbol) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = symbol;
+    }
+
+    private void openFrame(int nonterminal) {
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+            frameLines = Arrays.copyOf(frameLines, frameCount * 2);
+        }
+        frames[frameCount] = nonterminal;
+        frameLines[frameCount] = NONE;
+        frameCount++;
+    }
+}
@@ -0,0 +1,9 @@
+import java.io.*;
+
+/* Where the parser gets its tokens from: the provided LexicalAnalyser (through a method
+reference) or one of the faster scanners such as ArrayLexicalAnalyser. */
+
+public interface TokenSource {
+
+    Token getNextToken() throws IOException;
+}
@@ -0,0 +1,77 @@
+import java.io.*;
+import java.nio.file.*;
+
+/* Records binary traces and prints them back as text:
+
+    java TraceReplay -record program trace.bin    parses program, writing its trace to trace.bin
+    java TraceReplay trace.bin                     prints the trace as Generate prints it
+    java TraceReplay trace.bin from [to]           prints only the events of lines from to to
+    java TraceReplay -stats trace.bin              prints the size of the trace and of its text
+
+Replaying a whole trace prints exactly the lines the same parse would have printed with the
+text Generate (-Dtrace=print), so a stored binary trace can stand in for the text one, and a
+range starts at a line without reading what comes before it. Recording prints the parse's
+Compilation Exception, if any, to standard error, as Compile would write it to res.txt. */
+
+public class TraceReplay {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("-record")) {
+            try (BinaryTraceGenerate generate = new BinaryTraceGenerate(new BufferedOutputStream(new FileOutputStream(args[2])))) {
+                new SyntaxAnalyser(args[1], generate).parse(System.err);
+            }
+        } else if (args.length == 2 && args[0].equals("-stats")) {
+            try (BinaryTraceReader reader = new BinaryTraceReader(Paths.get(args[1]))) {
+                stats(reader, Files.size(Paths.get(args[1])));
+            }
+        } else if (args.length >= 1 && args.length <= 3 && !args[0].startsWith("-")) {
+            int from = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+            int to = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+            PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+            try (BinaryTraceReader reader = new BinaryTraceReader(Paths.get(args[0]))) {
+                replay(reader, from, to, out);
+            }
+            out.flush();
+        } else {
+            System.err.println("usage: java TraceReplay [-record program] trace.bin | trace.bin [from [to]] | -stats trace.bin");
+            System.exit(2);
+        }
+    }
+
+/* Prints the events from the first one leading up to line from until the first token after
+line to, as Generate would print them. */
+
+    public static void replay(BinaryTraceReader reader, int from, int to, PrintStream out) {
+        Generate generate = new Generate(out, true);
+        BinaryTraceReader.Cursor cursor = from > 0 ? reader.seekLine(from) : reader.cursor();
+        while (cursor.next()) {
+            if (cursor.kind() == BinaryTraceReader.TOKEN && cursor.line() > to) {
+                break;
+            }
+            cursor.replay(generate, out);
+        }
+    }
+
+    private static void stats(BinaryTraceReader reader, long fileBytes) {
+        CountingStream text = new CountingStream();
+        replay(reader, 0, Integer.MAX_VALUE, new PrintStream(text));
+        System.out.printf("%d events in %d bytes (%.2f bytes per event, %d distinct texts); as text %d bytes, %.1fx larger%n",
+                reader.events(), fileBytes, reader.eventBytes() / (double) Math.max(1, reader.events()), reader.texts(),
+                text.count, text.count / (double) fileBytes);
+    }
+
+    /** Counts the bytes written to it. */
+    private static final class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+}
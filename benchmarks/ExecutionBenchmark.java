@@ -0,0 +1,190 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/* Compares running programs with the Interpreter against running the classes BytecodeGenerate
+compiles them to, before and after the ExpressionOptimizer. Build as described in
+ParserBenchmark, then:
+
+    java -cp .:benchmarks ExecutionBenchmark [-n count] [-warmup runs] [-runs n] [program ...]
+
+Each program is parsed once and then run by each, first warmup times unmeasured (so the
+interpreter and the compiled classes are all JIT-compiled) and then runs times, printing the
+median milliseconds per run, the compiled class's speed-up over the interpreter, how long
+compiling to a class took, and the time and operations the optimizer saved. The built-in
+programs are loops of about count passes over the kind of arithmetic the sample programs do;
+every call get reads count, so program files given as arguments can use it the same way. The
+runs' puts are compared, and any difference is reported as a failure. */
+
+public class ExecutionBenchmark {
+
+    private static final String[][] PROGRAMS = {
+        {"arithmetic",
+            "begin\n"
+            + "call get(n) ;\n"
+            + "total := 0 ;\n"
+            + "for (i := 1 ; i <= n ; i := i + 1) do\n"
+            + "    total := total + i * i % 7 - i / 3 + (i - 1) * 2\n"
+            + "end loop ;\n"
+            + "call put(total)\n"
+            + "end\n"},
+        {"collatz",
+            "begin\n"
+            + "call get(n) ;\n"
+            + "steps := 0 ;\n"
+            + "start := 1 ;\n"
+            + "while steps < n loop\n"
+            + "    x := start ;\n"
+            + "    do\n"
+            + "        r := x % 2 ;\n"
+            + "        if r = 0 then x := x / 2 else x := 3 * x + 1 end if ;\n"
+            + "        steps := steps + 1\n"
+            + "    until x <= 1 ;\n"
+            + "    start := start + 1\n"
+            + "end loop ;\n"
+            + "call put(start, steps)\n"
+            + "end\n"},
+        {"nested",
+            "begin\n"
+            + "call get(n) ;\n"
+            + "hash := 7 ;\n"
+            + "i := 0 ;\n"
+            + "while i < n loop\n"
+            + "    j := 0 ;\n"
+            + "    while j < 10 loop\n"
+            + "        hash := (hash * 31 + j - i) % 1000003 ;\n"
+            + "        j := j + 1\n"
+            + "    end loop ;\n"
+            + "    i := i + 10\n"
+            + "end loop ;\n"
+            + "call put(hash)\n"
+            + "end\n"},
+        {"invariant",
+            "begin\n"
+            + "call get(n) ;\n"
+            + "a := 3 ; b := 5 ; c := 12 ; d := 4 ; e := 1 ;\n"
+            + "x1 := 0 ;\n"
+            + "i := 0 ;\n"
+            + "while i < n loop\n"
+            + "    x2 := a - b + c - d + e ;\n"
+            + "    x1 := x1 + a * b - c / d + e * i % 16 ;\n"
+            + "    x3 := x1 % 1024 / 2 * (60 * 60 * 24) ;\n"
+            + "    i := i + 1\n"
+            + "end loop ;\n"
+            + "call put(x1, x2, x3)\n"
+            + "end\n"},
+    };
+
+    private long count = 1_000_000;
+    private int warmup = 5;
+    private int runs = 10;
+
+    public static void main(String[] args) throws Exception {
+        ExecutionBenchmark bench = new ExecutionBenchmark();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-n":
+                    bench.count = ParserBenchmark.parseSize(args[++i]);
+                    break;
+                case "-warmup":
+                    bench.warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-runs":
+                    bench.runs = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+
+        System.out.printf("%-14s %14s %14s %10s %12s %14s %8s%n", "program", "interpret ms", "compiled ms", "speed-up",
+                "compile ms", "optimized ms", "ops");
+        boolean failed = false;
+        if (files.isEmpty()) {
+            for (String[] program : PROGRAMS) {
+                failed |= !bench.compare(program[0], program[1]);
+            }
+        }
+        for (String file : files) {
+            failed |= !bench.compare(new File(file).getName(), new String(Files.readAllBytes(Paths.get(file))));
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private boolean compare(String name, String source) throws IOException {
+        BytecodeGenerate generate = new BytecodeGenerate();
+        new SyntaxAnalyser(ArrayLexicalAnalyser.ofSource(source, generate.symbols()), generate).parse(System.err);
+        if (!generate.tree().complete()) {
+            System.out.printf("%-14s does not parse%n", name);
+            return false;
+        }
+        Program program = generate.program();
+        long start = System.nanoTime();
+        ProgramRunner compiled = BytecodeGenerate.compile(program);
+        double compileMillis = (System.nanoTime() - start) / 1e6;
+        ExpressionOptimizer optimizer = new ExpressionOptimizer();
+        ProgramRunner optimized = BytecodeGenerate.compile(optimizer.optimize(program));
+
+        Recorder interpreted = new Recorder();
+        Recorder ran = new Recorder();
+        Recorder ranOptimized = new Recorder();
+        double interpretMillis = time(new Interpreter(program), interpreted);
+        double compiledMillis = time(compiled, ran);
+        double optimizedMillis = time(optimized, ranOptimized);
+        String expected = interpreted.output.toString();
+        if (!expected.equals(ran.output.toString()) || !expected.equals(ranOptimized.output.toString())) {
+            System.out.printf("%-14s FAILED: interpreted %s but compiled %s and optimized %s%n", name, expected, ran.output,
+                    ranOptimized.output);
+            return false;
+        }
+        System.out.printf("%-14s %14.2f %14.2f %9.1fx %12.2f %14.2f %3d/%-4d%n", name, interpretMillis, compiledMillis,
+                interpretMillis / compiledMillis, compileMillis, optimizedMillis,
+                optimizer.folded() + optimizer.hoisted(), optimizer.operationsBefore());
+        return true;
+    }
+
+    /* Median milliseconds per run after the warmup runs; io keeps the output of the last run. */
+    private double time(ProgramRunner runner, Recorder io) {
+        for (int i = 0; i < warmup; i++) {
+            io.output.setLength(0);
+            runner.run(io);
+        }
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            io.output.setLength(0);
+            long start = System.nanoTime();
+            runner.run(io);
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[runs / 2];
+    }
+
+    /** Answers every get with the count and records the puts. */
+    private final class Recorder implements ProgramIO {
+        final StringBuilder output = new StringBuilder();
+
+        @Override
+        public double getNumber() {
+            return count;
+        }
+
+        @Override
+        public String getText() {
+            return Long.toString(count);
+        }
+
+        @Override
+        public void put(double value) {
+            output.append(ProgramIO.format(value)).append(' ');
+        }
+
+        @Override
+        public void put(String value) {
+            output.append(value).append(' ');
+        }
+    }
+}
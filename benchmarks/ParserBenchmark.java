@@ -0,0 +1,280 @@
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+
+/* Benchmarks for the front end, kept out of the compiler's own directory so "javac *.java" and
+the makefile do not pick them up. Build and run from the project directory:
+
+    javac *.java && javac -cp . -d benchmarks benchmarks/*.java
+    java -Xmx2g -cp .:benchmarks ParserBenchmark [options] [benchmark ...]
+
+Benchmarks (all by default):
+    lex            LexicalAnalyser.getNextToken over a whole file
+    lex-array      ArrayLexicalAnalyser.getNextToken over a whole file
+    lex-words      the same, scanning word-at-a-time (see ScanBenchmark for bytes per cycle)
+    parse-trace    SyntaxAnalyser with the normal Generate trace, printed to a null stream
+    parse-silent   SyntaxAnalyser with SilentGenerate (validation only)
+    parse-table    TableDrivenParser with SilentGenerate
+    error          a failing parse at a given nesting depth, including toTraceString
+    keywords       ReservedWords.lookup over a mix of reserved words and identifiers
+
+Options:
+    -sizes 1k,64k,1m,100m   synthetic input sizes (default 1k,10k,100k,1m,10m,100m)
+    -samples dir            sample programs to include (default "Programs Folder", if present)
+    -depths 10,100,1000     nesting depths for the error benchmark
+    -warmup ms -time ms -iterations n
+
+Each benchmark runs for the warmup time, then for the given number of timed iterations. It
+reports operations per second (one operation is one pass over the input), tokens per second,
+and the bytes allocated per token and GC collections per operation. Allocation is read from
+the thread's allocation counter, in the way a GC profiler would.
+
+JMH is not used because the project has no build tool to fetch it, but each case is a single
+operation on a prepared input, so it would move to a JMH @Benchmark method unchanged. */
+
+public class ParserBenchmark {
+
+    /** One pass over an input. */
+    interface Operation {
+        long run() throws Exception;
+    }
+
+    private static final PrintStream NULL = new PrintStream(OutputStream.nullOutputStream());
+
+    /* Results are summed here so no operation can be optimised away. */
+    static volatile long sink;
+
+    private long warmupMillis = 2000;
+    private long iterationMillis = 1000;
+    private int iterations = 5;
+
+    public static void main(String[] args) throws Exception {
+        ParserBenchmark bench = new ParserBenchmark();
+        List<String> sizes = Arrays.asList("1k", "10k", "100k", "1m", "10m", "100m");
+        List<String> depths = Arrays.asList("10", "100", "1000");
+        String samples = "Programs Folder";
+        Set<String> selected = new LinkedHashSet<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-sizes":
+                    sizes = Arrays.asList(args[++i].split(","));
+                    break;
+                case "-samples":
+                    samples = args[++i];
+                    break;
+                case "-depths":
+                    depths = Arrays.asList(args[++i].split(","));
+                    break;
+                case "-warmup":
+                    bench.warmupMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-time":
+                    bench.iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-iterations":
+                    bench.iterations = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    selected.add(args[i]);
+            }
+        }
+        if (selected.isEmpty()) {
+            selected.addAll(Arrays.asList("lex", "lex-array", "parse-trace", "parse-silent", "parse-table", "error", "keywords"));
+        }
+
+        Map<String, Path> inputs = new LinkedHashMap<>();
+        File folder = new File(samples);
+        String[] names = folder.list();
+        if (names != null) {
+            Arrays.sort(names);
+            for (String name : names) {
+                inputs.put(name, new File(folder, name).toPath());
+            }
+        }
+        for (String size : sizes) {
+            inputs.put("synthetic-" + size, SyntheticProgram.temporary(parseSize(size)));
+        }
+
+        System.out.printf("%-14s %-18s %12s %14s %14s %10s %10s%n",
+                "benchmark", "input", "ops/s", "tokens/s", "MB/s", "B/token", "gc/op");
+        for (String benchmark : selected) {
+            if (benchmark.equals("error")) {
+                for (String depth : depths) {
+                    bench.error(Integer.parseInt(depth));
+                }
+            } else if (benchmark.equals("keywords")) {
+                bench.keywords();
+            } else {
+                for (Map.Entry<String, Path> input : inputs.entrySet()) {
+                    bench.file(benchmark, input.getKey(), input.getValue());
+                }
+            }
+        }
+    }
+
+    private void file(String benchmark, String name, Path path) throws Exception {
+        String fileName = path.toString();
+        Operation operation;
+        switch (benchmark) {
+            case "lex":
+                operation = () -> {
+                    LexicalAnalyser lex = new LexicalAnalyser(fileName);
+                    return drain(lex::getNextToken);
+                };
+                break;
+            case "lex-array":
+                operation = () -> drain(ArrayLexicalAnalyser.fromFile(fileName));
+                break;
+            case "lex-words":
+                operation = () -> drain(ArrayLexicalAnalyser.fromFile(fileName, true));
+                break;
+            case "parse-trace":
+                operation = () -> parse(fileName, new Generate(NULL, true), false);
+                break;
+            case "parse-silent":
+                operation = () -> parse(fileName, new SilentGenerate(), false);
+                break;
+            case "parse-table":
+                operation = () -> parse(fileName, new SilentGenerate(), true);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown benchmark " + benchmark);
+        }
+        measure(benchmark, name, drain(ArrayLexicalAnalyser.fromFile(fileName)), Files.size(path), operation);
+    }
+
+    private static long drain(TokenSource tokens) throws IOException {
+        long count = 0;
+        Token token;
+        do {
+            token = tokens.getNextToken();
+            count++;
+        } while (token.symbol != Token.eofSymbol);
+        return count;
+    }
+
+    private static long parse(String fileName, Generate generate, boolean table) throws IOException {
+        TokenSource tokens = ArrayLexicalAnalyser.fromFile(fileName);
+        if (!table) {
+            new SyntaxAnalyser(tokens, generate).parse(NULL);
+            return 1;
+        }
+        try {
+            new TableDrivenParser(tokens, generate).parseProgram();
+            return 1;
+        } catch (CompilationException e) {
+            return 0;
+        }
+    }
+
+/* A program whose last factor is missing, inside depth nested while loops, so the failure
+carries depth + a few frames of context. parse prints the failure's toTraceString, so that is
+measured too. */
+
+    private void error(int depth) throws Exception {
+        StringBuilder text = new StringBuilder("begin\n");
+        for (int i = 0; i < depth; i++) {
+            text.append("while x < 1 loop\n");
+        }
+        text.append("x := y + ;\n");
+        for (int i = 0; i < depth; i++) {
+            text.append("end loop\n");
+        }
+        text.append("end\n");
+        String source = text.toString();
+        long tokens = drain(ArrayLexicalAnalyser.ofSource(source));
+        measure("error", "depth-" + depth, tokens, source.length(), () -> {
+            new SyntaxAnalyser(ArrayLexicalAnalyser.ofSource(source), new SilentGenerate()).parse(NULL);
+            return 1;
+        });
+    }
+
+    private void keywords() throws Exception {
+        String[] words = {
+            "begin", "end", "if", "then", "else", "while", "loop", "do", "until", "for", "call",
+            "procedure", "is", "integer", "float", "string", "x1", "total", "count", "value",
+            "BEGIN", "While", "ending", "iffy", "forth", "i", "variable_name", "z"
+        };
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            starts[i] = text.length();
+            text.append(words[i]);
+        }
+        char[] chars = text.toString().toCharArray();
+        int rounds = 1000;
+        measure("keywords", words.length + " words", (long) rounds * words.length, (long) rounds * chars.length, () -> {
+            long sum = 0;
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < words.length; i++) {
+                    sum += ReservedWords.lookup(chars, starts[i], words[i].length());
+                }
+            }
+            return sum;
+        });
+    }
+
+    private void measure(String benchmark, String input, long tokens, long bytes, Operation operation) throws Exception {
+        long end = System.nanoTime() + warmupMillis * 1_000_000;
+        do {
+            sink += operation.run();
+        } while (System.nanoTime() < end);
+
+        double opsPerSecond = 0;
+        double bytesPerOperation = 0;
+        double collectionsPerOperation = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocated = allocatedBytes();
+            long collections = collections();
+            long start = System.nanoTime();
+            long deadline = start + iterationMillis * 1_000_000;
+            long count = 0;
+            long now;
+            do {
+                sink += operation.run();
+                count++;
+                now = System.nanoTime();
+            } while (now < deadline);
+            opsPerSecond += count * 1e9 / (now - start);
+            bytesPerOperation += (allocatedBytes() - allocated) / (double) count;
+            collectionsPerOperation += (collections() - collections) / (double) count;
+        }
+        opsPerSecond /= iterations;
+        bytesPerOperation /= iterations;
+        collectionsPerOperation /= iterations;
+        System.out.printf("%-14s %-18s %12.1f %14.0f %14.1f %10.1f %10.3f%n",
+                benchmark, input, opsPerSecond, opsPerSecond * tokens, opsPerSecond * bytes / 1e6,
+                bytesPerOperation / tokens, collectionsPerOperation);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    static long parseSize(String size) {
+        String s = size.trim().toLowerCase();
+        long unit = 1;
+        if (s.endsWith("k")) {
+            unit = 1024;
+        } else if (s.endsWith("m")) {
+            unit = 1024 * 1024;
+        }
+        if (unit > 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return Long.parseLong(s) * unit;
+    }
+}
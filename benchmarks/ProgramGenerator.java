@@ -0,0 +1,253 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.Random;
+
+/* Generates programs in the course language for stress tests, valid or with one deliberate
+syntax error. The knobs are:
+
+    statements        number of top-level statements
+    nesting           depth of the deepest if/while/for/do-until nest, placed halfway through
+    expressionLength  operands in each arithmetic expression
+    arguments         identifiers in each call's argument list
+    broken            replace the innermost statement of the deepest nest with a bad one
+
+Other compound statements nest one or two levels deep. The deep nest is written iteratively,
+openers first and closers afterwards, so generating any depth takes no Java stack. The same
+seed always gives the same program. */
+
+public class ProgramGenerator {
+
+    private static final int IF = 0;
+    private static final int WHILE = 1;
+    private static final int FOR = 2;
+    private static final int DO = 3;
+
+    private static final String[] OPERATORS = {" + ", " - ", " * ", " / ", " % "};
+    private static final String[] COMPARISONS = {" < ", " > ", " <= ", " >= ", " = ", " != "};
+
+    /* Each error on its own line; all are rejected by the parser. */
+    private static final String[] ERRORS = {
+        "x := y + ;",
+        "x := (y * 2 ;",
+        "call put(a, ) ;",
+        "x y ;",
+        "if x then y := 1 end if ;",
+        "while x < 1 y := 2 end loop ;",
+        "then := 3 ;",
+    };
+
+    private final int statements;
+    private final int nesting;
+    private final int expressionLength;
+    private final int arguments;
+    private final boolean broken;
+    private final long seed;
+
+    private Random random;
+    private Writer out;
+
+    public ProgramGenerator(int statements, int nesting, int expressionLength, int arguments, boolean broken, long seed) {
+        if (statements < 1 || nesting < 0 || expressionLength < 1 || arguments < 1) {
+            throw new IllegalArgumentException("need at least one statement, operand and argument");
+        }
+        this.statements = statements;
+        this.nesting = nesting;
+        this.expressionLength = expressionLength;
+        this.arguments = arguments;
+        this.broken = broken;
+        this.seed = seed;
+    }
+
+    public void write(Writer writer) throws IOException {
+        random = new Random(seed);
+        out = writer;
+        out.write("begin\n");
+        int deep = statements / 2;
+        for (int i = 0; i < statements; i++) {
+            if (i > 0) {
+                out.write(" ;\n");
+            }
+            if (i == deep) {
+                nest(nesting, broken);
+            } else {
+                statement(nesting == 0 ? 0 : 1 + random.nextInt(Math.min(2, nesting)));
+            }
+        }
+        out.write("\nend\n");
+        out.flush();
+    }
+
+    public String generate() {
+        StringWriter text = new StringWriter();
+        try {
+            write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return text.toString();
+    }
+
+    /* Writes the program to a temporary file that is deleted on exit. */
+    public Path writeTemporary() throws IOException {
+        Path file = Files.createTempFile("generated-", ".txt");
+        file.toFile().deleteOnExit();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file)), 1 << 16)) {
+            write(writer);
+        }
+        return file;
+    }
+
+    /* A statement nesting at most depth compound statements; shallow, so recursion is fine here. */
+    private void statement(int depth) throws IOException {
+        int kind = random.nextInt(depth > 0 ? 7 : 3);
+        if (kind < 3) {
+            simple(kind);
+        } else {
+            kind -= 3;
+            open(kind);
+            int count = 1 + random.nextInt(2);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    out.write(" ;\n");
+                }
+                statement(depth - 1);
+            }
+            close(kind);
+        }
+    }
+
+/* depth compound statements inside one another, each holding a simple statement and the next
+level, with a simple (or, if broken, a bad) statement at the bottom. */
+
+    private void nest(int depth, boolean error) throws IOException {
+        byte[] kinds = new byte[depth];
+        for (int i = 0; i < depth; i++) {
+            kinds[i] = (byte) random.nextInt(4);
+            open(kinds[i]);
+            simple(random.nextInt(3));
+            out.write(" ;\n");
+        }
+        if (error) {
+            out.write(ERRORS[random.nextInt(ERRORS.length)]);
+            out.write('\n');
+        }
+        simple(random.nextInt(3));
+        for (int i = depth - 1; i >= 0; i--) {
+            close(kinds[i]);
+        }
+    }
+
+    private void simple(int kind) throws IOException {
+        switch (kind) {
+            case 0:
+                out.write(identifier());
+                out.write(" := ");
+                expression();
+                break;
+            case 1:
+                out.write("call ");
+                out.write(identifier());
+                out.write('(');
+                for (int i = 0; i < arguments; i++) {
+                    if (i > 0) {
+                        out.write(", ");
+                    }
+                    out.write(identifier());
+                }
+                out.write(')');
+                break;
+            default:
+                out.write(identifier());
+                out.write(" := \"text ");
+                out.write(Integer.toString(random.nextInt(1000)));
+                out.write('"');
+        }
+    }
+
+    private void open(int kind) throws IOException {
+        switch (kind) {
+            case IF:
+                out.write("if ");
+                condition();
+                out.write(" then\n");
+                break;
+            case WHILE:
+                out.write("while ");
+                condition();
+                out.write(" loop\n");
+                break;
+            case FOR:
+                out.write("for (i := 0 ; ");
+                condition();
+                out.write(" ; i := i + 1) do\n");
+                break;
+            default:
+                out.write("do\n");
+        }
+    }
+
+    private void close(int kind) throws IOException {
+        switch (kind) {
+            case IF:
+                if (random.nextBoolean()) {
+                    out.write("\nelse\n");
+                    simple(0);
+                }
+                out.write("\nend if");
+                break;
+            case WHILE:
+            case FOR:
+                out.write("\nend loop");
+                break;
+            default:
+                out.write("\nuntil ");
+                condition();
+        }
+    }
+
+    private void condition() throws IOException {
+        out.write(identifier());
+        out.write(COMPARISONS[random.nextInt(COMPARISONS.length)]);
+        switch (random.nextInt(3)) {
+            case 0:
+                out.write(identifier());
+                break;
+            case 1:
+                out.write(Integer.toString(random.nextInt(100)));
+                break;
+            default:
+                out.write("\"s\"");
+        }
+    }
+
+    /* expressionLength operands, with the occasional parenthesised pair. */
+    private void expression() throws IOException {
+        for (int i = 0; i < expressionLength; i++) {
+            if (i > 0) {
+                out.write(OPERATORS[random.nextInt(OPERATORS.length)]);
+            }
+            if (i + 1 < expressionLength && random.nextInt(8) == 0) {
+                out.write('(');
+                operand();
+                out.write(OPERATORS[random.nextInt(2)]);
+                operand();
+                out.write(')');
+                i++;
+            } else {
+                operand();
+            }
+        }
+    }
+
+    private void operand() throws IOException {
+        if (random.nextBoolean()) {
+            out.write(identifier());
+        } else {
+            out.write(Integer.toString(random.nextInt(1000)));
+        }
+    }
+
+    private String identifier() {
+        return "v" + random.nextInt(64);
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.*;
+import java.util.*;
+
+/* Checks that SyntaxAnalyser in recovery mode reports every error of a program in one pass.
+Build as described in ParserBenchmark, then:
+
+    java -cp .:benchmarks RecoveryCheck
+
+Each program is parsed with recovery on and a printing Generate. The innermost message of every
+recorded error must match the expected list, in order, and every 312BEGIN in the trace must be
+closed by its 312END. The programs are sample program7 (a loop header written as "else", then
+two missing ";" at the end), statements run together without ";" at the top level and in a
+loop, sample program5 (a loop closed by "end" alone), a file ending inside a statement, which
+must still close every open nonterminal, and a ";" after the program's "end". Exits with status
+1 on a mismatch. */
+
+public class RecoveryCheck {
+
+    private static final String[][] PROGRAMS = {
+        {"program7",
+            "\n"
+            + "begin\n"
+            + "call get(x1) ;\t\t\t-- input number\n"
+            + "x2 := 1 ;\n"
+            + "else x1 != 0 loop\n"
+            + "\tx2 := a - b + c - d + e ; \t-- first calculation\n"
+            + "        x1 := a * b - c / d + e         -- second calculation\n"
+            + "end loop ;\n"
+            + "text := \"the result is \" ;\n"
+            + "call put(text) ;\n"
+            + "call put(x1)\t\t\t-- output factorial\n"
+            + "x3 := x1 % 10\t\t\t-- base-10 modulo\n"
+            + "call put(x3)\t\t\t-- output modulo\n"
+            + "end\n",
+            "Error at line 4: Expected a statement on line: 4 (found 'else')",
+            "Error at line 7: Expected ';' but found 'end' on line: 7 (found 'end')",
+            "Error at line 11: Expected ';' but found 'IDENTIFIER' on line: 11 (found 'x3')",
+            "Error at line 12: Expected ';' but found 'call' on line: 12 (found 'call')"},
+        {"missing-semicolons",
+            "\n"
+            + "begin x := 1\n"
+            + "y := 2 ;\n"
+            + "z := 3\n"
+            + "w := 4 end\n",
+            "Error at line 2: Expected ';' but found 'IDENTIFIER' on line: 2 (found 'y')",
+            "Error at line 4: Expected ';' but found 'IDENTIFIER' on line: 4 (found 'w')"},
+        {"loop-body",
+            "\n"
+            + "begin\n"
+            + "while x < 3 loop\n"
+            + "    x := x + 1\n"
+            + "    call put(x)\n"
+            + "end loop ;\n"
+            + "y := 1\n"
+            + "z := 2\n"
+            + "end\n",
+            "Error at line 4: Expected ';' but found 'call' on line: 4 (found 'call')",
+            "Error at line 7: Expected ';' but found 'IDENTIFIER' on line: 7 (found 'z')"},
+        {"program5",
+            "\n"
+            + "begin\n"
+            + "call get(x1) ;\t\t\t-- input number\n"
+            + "x2 := 1 ;\n"
+            + "while x1 != 0 loop\n"
+            + "\tx2 := x2 * x1 ; \t-- multiply by next term\n"
+            + "        x1 := x1 - 1            -- decrement count\n"
+            + "end ;\n"
+            + "text := \"the result is \" ;\n"
+            + "call put(text) ;\n"
+            + "call put(x1)\t\t\t-- output factorial\n"
+            + "end\n",
+            "Error at line 7: Expected 'loop' but found ';' on line: 7 (found ';')"},
+        {"eof-in-statement",
+            "\n"
+            + "begin\n"
+            + "x := 1 ;\n"
+            + "y :=\n",
+            "Error at line 4: Expected identifier, number, or ( on line: 4 (found '')"},
+        {"after-end",
+            "\n"
+            + "begin\n"
+            + "x := 1\n"
+            + "end ;\n",
+            "Error at line 3: Expected 'EOF' but found ';' on line: 3 (found ';')"},
+    };
+
+    public static void main(String[] args) throws IOException {
+        boolean failed = false;
+        for (String[] program : PROGRAMS) {
+            List<String> expected = Arrays.asList(program).subList(2, program.length);
+            ByteArrayOutputStream trace = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(trace);
+            SyntaxAnalyser parser = new SyntaxAnalyser(ArrayLexicalAnalyser.ofSource(program[1]), new Generate(out, true));
+            parser.setRecovery(true);
+            parser.parse(out);
+            out.flush();
+
+            List<String> found = new ArrayList<>();
+            for (CompilationException error : parser.errors()) {
+                found.add(innermost(error).getMessage());
+            }
+            String unbalanced = unbalanced(trace.toString());
+            if (!found.equals(expected)) {
+                failed = true;
+                System.out.println("FAIL " + program[0] + ": expected " + expected + " but found " + found);
+            } else if (unbalanced != null) {
+                failed = true;
+                System.out.println("FAIL " + program[0] + ": " + unbalanced);
+            } else {
+                System.out.println("ok   " + program[0] + ": " + found.size() + " errors");
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+
+    private static Throwable innermost(Throwable error) {
+        while (error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /* Describes the first 312END that does not close the innermost open 312BEGIN, or a 312BEGIN
+    left open; null if the trace is balanced. */
+    private static String unbalanced(String trace) {
+        Deque<String> open = new ArrayDeque<>();
+        for (String line : trace.split("\n")) {
+            if (line.startsWith("312BEGIN ")) {
+                open.push(line.substring(9));
+            } else if (line.startsWith("312END ")) {
+                String name = line.substring(7);
+                if (!name.equals(open.peek())) {
+                    return "312END " + name + " while " + open.peek() + " is open";
+                }
+                open.pop();
+            }
+        }
+        return open.isEmpty() ? null : open.peek() + " is never ended";
+    }
+}
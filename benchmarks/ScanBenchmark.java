@@ -0,0 +1,202 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/* Compares ArrayLexicalAnalyser's scalar scanning with its word-at-a-time scanning in bytes per
+cycle, on sources where most characters are blanks, comments and names. Build as described in
+ParserBenchmark, then from the project directory:
+
+    java -cp .:benchmarks ScanBenchmark [-size 4m] [-ghz 2.0] [-warmup ms] [-time ms] [-iterations n]
+
+Inputs, each repeated to about size characters:
+    samples        the programs in Programs Folder one after another, with their comments
+    commented      indented statements with a -- comment on most lines
+    synthetic      SyntheticProgram's output, which has almost no comments
+    non-ascii      samples with accented names and comments, which takes the scalar path
+
+Only the scan is timed: each pass creates a scanner over the text already in memory outside the
+clock and then reads every token. Both modes share getNextToken, so both are warmed up on every
+input before anything is measured, and their timed iterations alternate; the median iteration
+is reported. Bytes per cycle is characters per second over the clock rate, taken from -ghz or
+else from the "cpu MHz" line of /proc/cpuinfo, which is nominal: with turbo or power saving the
+true figure differs, but both modes are off by the same factor. The tokens of the two modes are
+compared first, and any difference is reported as a failure. */
+
+public class ScanBenchmark {
+
+    private static final String COMMENTED =
+        "begin -- the commented program\n"
+        + "    call get(count) ; -- how many values to read\n"
+        + "    total := 0 ; -- running total of the values\n"
+        + "    while count != 0 loop -- one pass per value\n"
+        + "        call get(value) ; -- the next value\n"
+        + "        total := total + value * weight -- weighted sum\n"
+        + "        ; count := count - 1\n"
+        + "    end loop ;\n"
+        + "    -- print the result once every value has been read\n"
+        + "    call put(total)\n"
+        + "end\n";
+
+    private long size = 4L << 20;
+    private double hertz;
+    private long warmupMillis = 2000;
+    private long iterationMillis = 1000;
+    private int iterations = 5;
+
+    public static void main(String[] args) throws Exception {
+        ScanBenchmark bench = new ScanBenchmark();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-size":
+                    bench.size = ParserBenchmark.parseSize(args[++i]);
+                    break;
+                case "-ghz":
+                    bench.hertz = Double.parseDouble(args[++i]) * 1e9;
+                    break;
+                case "-warmup":
+                    bench.warmupMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-time":
+                    bench.iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-iterations":
+                    bench.iterations = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("usage: java ScanBenchmark [-size 4m] [-ghz 2.0] [-warmup ms] [-time ms] [-iterations n]");
+                    System.exit(2);
+            }
+        }
+        if (bench.hertz == 0) {
+            bench.hertz = cpuHertz();
+        }
+
+        StringBuilder samples = new StringBuilder();
+        File[] files = new File("Programs Folder").listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                samples.append(new String(Files.readAllBytes(file.toPath()))).append('\n');
+            }
+        }
+        Path synthetic = SyntheticProgram.temporary(bench.size);
+
+        Map<String, String> inputs = new LinkedHashMap<>();
+        if (samples.length() > 0) {
+            inputs.put("samples", samples.toString());
+        }
+        inputs.put("commented", COMMENTED);
+        inputs.put("synthetic", new String(Files.readAllBytes(synthetic)));
+        inputs.put("non-ascii", (samples.length() > 0 ? samples.toString() : COMMENTED)
+                .replace("x1", "xé1").replace("-- ", "-- über "));
+
+        for (Map.Entry<String, String> input : inputs.entrySet()) {
+            input.setValue(repeat(input.getValue(), bench.size));
+        }
+        long end = System.nanoTime() + bench.warmupMillis * 1_000_000;
+        while (System.nanoTime() < end) {
+            for (String source : inputs.values()) {
+                scan(source, false);
+                scan(source, true);
+            }
+        }
+
+        System.out.printf("%-12s %10s %12s %12s %12s %12s %9s%n", "input", "chars", "scalar MB/s", "words MB/s",
+                "scalar B/cyc", "words B/cyc", "speed-up");
+        boolean failed = false;
+        for (Map.Entry<String, String> input : inputs.entrySet()) {
+            failed |= !bench.compare(input.getKey(), input.getValue());
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private boolean compare(String name, String source) throws IOException {
+        String difference = difference(source);
+        if (difference != null) {
+            System.out.printf("%-12s FAILED: %s%n", name, difference);
+            return false;
+        }
+        double[] scalarRates = new double[iterations];
+        double[] wordRates = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            scalarRates[i] = rate(source, false);
+            wordRates[i] = rate(source, true);
+        }
+        Arrays.sort(scalarRates);
+        Arrays.sort(wordRates);
+        double scalar = scalarRates[iterations / 2];
+        double words = wordRates[iterations / 2];
+        System.out.printf("%-12s %10d %12.1f %12.1f %12.3f %12.3f %8.2fx%n", name, source.length(), scalar / 1e6,
+                words / 1e6, scalar / hertz, words / hertz, words / scalar);
+        return true;
+    }
+
+    /* The first token where the two modes disagree, or null. */
+    private static String difference(String source) throws IOException {
+        ArrayLexicalAnalyser scalar = ArrayLexicalAnalyser.ofSource(source, new SymbolTable(), false);
+        ArrayLexicalAnalyser words = ArrayLexicalAnalyser.ofSource(source, new SymbolTable(), true);
+        while (true) {
+            Token expected = scalar.getNextToken();
+            Token actual = words.getNextToken();
+            if (expected.symbol != actual.symbol || !expected.text.equals(actual.text)
+                    || expected.lineNumber != actual.lineNumber || scalar.tokenExtentEnd() != words.tokenExtentEnd()) {
+                return "scalar " + expected + " but words " + actual + " at " + scalar.tokenExtentStart();
+            }
+            if (expected.symbol == Token.eofSymbol) {
+                return null;
+            }
+        }
+    }
+
+    /* Characters scanned per second over one timed iteration. */
+    private double rate(String source, boolean wordAtATime) throws IOException {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+        long nanos = 0;
+        long passes = 0;
+        do {
+            nanos += scan(source, wordAtATime);
+            passes++;
+        } while (System.nanoTime() < deadline);
+        return passes * (double) source.length() * 1e9 / nanos;
+    }
+
+    /* Nanoseconds to read every token of source with a new scanner. */
+    private static long scan(String source, boolean wordAtATime) throws IOException {
+        ArrayLexicalAnalyser scanner = ArrayLexicalAnalyser.ofSource(source, new SymbolTable(), wordAtATime);
+        long start = System.nanoTime();
+        long count = 0;
+        Token token;
+        do {
+            token = scanner.getNextToken();
+            count++;
+        } while (token.symbol != Token.eofSymbol);
+        long nanos = System.nanoTime() - start;
+        ParserBenchmark.sink += count;
+        return nanos;
+    }
+
+    private static String repeat(String text, long size) {
+        StringBuilder out = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, size + text.length()));
+        do {
+            out.append(text);
+        } while (out.length() < size);
+        return out.toString();
+    }
+
+    /* The nominal clock rate from /proc/cpuinfo, or 1 GHz if it is not there. */
+    private static double cpuHertz() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/cpuinfo"))) {
+                if (line.startsWith("cpu MHz")) {
+                    return Double.parseDouble(line.substring(line.indexOf(':') + 1).trim()) * 1e6;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            /* fall through */
+        }
+        System.err.println("no clock rate in /proc/cpuinfo; assuming 1 GHz, give -ghz for real bytes per cycle");
+        return 1e9;
+    }
+}
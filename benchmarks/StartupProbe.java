@@ -0,0 +1,162 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+
+/* Measures what a one-shot "java Compile" costs before it does any work: the time from
+launching the JVM to the first 312TOKEN line of the trace, and to the JVM's exit, for three
+launches: plain, from the class directory as the makefile runs it; from a jar of the same
+classes; and from that jar with an application Class Data Sharing archive. Build as described
+in ParserBenchmark, then from the project directory:
+
+    java -cp .:benchmarks StartupProbe [-runs n] [-flags "jvm flags"]
+
+Every launch runs Compile in a scratch directory holding a copy of Programs Folder. The jar is
+needed because the JVM only archives classes from jars, and the archive is created from it by
+a training run of Compile over Programs Folder with -XX:ArchiveClassesAtExit, so it holds the
+classes that run loads already parsed and verified. -flags adds JVM options to every launch,
+e.g. "-Dlexer=array", whose keyword table is built once per JVM rather than per file, or
+"-XX:TieredStopAtLevel=1", which suits runs this short.
+
+The makefile targets for the same:
+
+    compile.jsa: Compiler
+        jar cf compile.jar *.class
+        $(JAVA) -XX:ArchiveClassesAtExit=compile.jsa -cp compile.jar Compile > /dev/null
+    run-fast: compile.jsa
+        $(JAVA) -XX:SharedArchiveFile=compile.jsa -cp compile.jar Compile > output.txt
+    startup-probe: Compiler
+        $(JAVAC) -cp . -d benchmarks benchmarks/StartupProbe.java
+        $(JAVA) -cp .:benchmarks StartupProbe
+
+The archive must be rebuilt whenever the jar or the JDK changes; the JVM rejects a stale one
+and simply starts without it. On Java 17 the archive does not cover the method handles that
+javac's invokedynamic string concatenation spins on first use of each call site, which the
+probe shows to be the larger part of startup for these programs (Compile itself and the error
+messages concatenate). Compiling with "javac -XDstringConcat=inline" turns those into plain
+StringBuilder code and removes that cost whether or not an archive is used. */
+
+public class StartupProbe {
+
+    private int runs = 10;
+    private List<String> flags = new ArrayList<>();
+    private final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    private final Path classes = Paths.get("").toAbsolutePath();
+
+    public static void main(String[] args) throws Exception {
+        StartupProbe probe = new StartupProbe();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-runs":
+                    probe.runs = Integer.parseInt(args[++i]);
+                    break;
+                case "-flags":
+                    probe.flags = Arrays.asList(args[++i].trim().split("\\s+"));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        probe.run();
+    }
+
+    private void run() throws Exception {
+        Path programs = Paths.get("Programs Folder");
+        if (!Files.isDirectory(programs)) {
+            throw new FileNotFoundException("no Programs Folder in " + classes);
+        }
+        Path scratch = Files.createTempDirectory("startup-");
+        List<Path> created = new ArrayList<>();
+        try {
+            Path copy = Files.createDirectory(scratch.resolve("Programs Folder"));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(programs)) {
+                for (Path file : files) {
+                    created.add(Files.copy(file, copy.resolve(file.getFileName())));
+                }
+            }
+            created.add(copy);
+            Path jar = scratch.resolve("compile.jar");
+            Path archive = scratch.resolve("compile.jsa");
+            created.add(jar);
+            created.add(archive);
+            created.add(scratch.resolve("res.txt"));
+            writeJar(jar);
+            launch(scratch, jar, "-XX:ArchiveClassesAtExit=" + archive);
+            System.out.printf("archive of %s: %d KB%n", classes, Files.size(archive) / 1024);
+
+            System.out.printf("%-8s %18s %18s%n", "launch", "first token ms", "exit ms");
+            report("plain", scratch, classes, null);
+            report("jar", scratch, jar, null);
+            report("appcds", scratch, jar, "-XX:SharedArchiveFile=" + archive);
+        } finally {
+            for (Path path : created) {
+                Files.deleteIfExists(path);
+            }
+            Files.delete(scratch);
+        }
+    }
+
+    /* Packs the compiler's classes (those directly in the class directory) into a jar. */
+    private void writeJar(Path jar) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+                DirectoryStream<Path> files = Files.newDirectoryStream(classes, "*.class")) {
+            for (Path file : files) {
+                out.putNextEntry(new JarEntry(file.getFileName().toString()));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    /* Launches runs times (after one unmeasured launch to warm the file cache) and prints the
+    median and best of each time. */
+    private void report(String label, Path directory, Path classPath, String flag) throws Exception {
+        launch(directory, classPath, flag);
+        long[] first = new long[runs];
+        long[] exit = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long[] times = launch(directory, classPath, flag);
+            first[i] = times[0];
+            exit[i] = times[1];
+        }
+        Arrays.sort(first);
+        Arrays.sort(exit);
+        System.out.printf("%-8s %9.1f (%5.1f) %9.1f (%5.1f)   median (best)%n", label,
+                first[runs / 2] / 1e6, first[0] / 1e6, exit[runs / 2] / 1e6, exit[0] / 1e6);
+    }
+
+/* Runs Compile from classPath in directory and returns the nanoseconds to its first 312TOKEN
+line and to its exit. System.out flushes at every line, so the line is read as soon as it is
+printed. */
+
+    private long[] launch(Path directory, Path classPath, String flag) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        if (flag != null) {
+            command.add(flag);
+        }
+        command.addAll(flags);
+        command.add("-cp");
+        command.add(classPath.toString());
+        command.add("Compile");
+        ProcessBuilder builder = new ProcessBuilder(command).directory(directory.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        long first = -1;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (first < 0 && line.startsWith("312TOKEN")) {
+                    first = System.nanoTime() - start;
+                }
+            }
+        }
+        int status = process.waitFor();
+        long exit = System.nanoTime() - start;
+        if (status != 0 || first < 0) {
+            throw new IllegalStateException(String.join(" ", command) + " exited with " + status + (first < 0 ? " and no trace" : ""));
+        }
+        return new long[] {first, exit};
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/* Checks that StreamLexicalAnalyser returns the same tokens as ArrayLexicalAnalyser over the same
+bytes when characters outside the BMP (surrogate pairs in the window) land at or near the end of
+the window. Build as described in ParserBenchmark, then:
+
+    java -Dfile.encoding=UTF-8 -cp .:benchmarks StreamScanCheck
+
+Each program puts a run of n letters and then a non-BMP character inside a string constant, an
+identifier and a comment, for every n around the window size, so the pair is split at every
+place the window can end. It is scanned through a FileChannel, which fills the byte buffer on
+every read, and through a channel that hands over a few bytes at a time, with the default window
+and the smallest one. Exits with status 1 on the first program whose tokens differ, and with
+status 2 if the default charset cannot encode the test characters. */
+
+public class StreamScanCheck {
+
+    private static final String WIDE = new String(Character.toChars(0x1F600));
+
+    public static void main(String[] args) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (!charset.newEncoder().canEncode(WIDE)) {
+            System.out.println("the default charset " + charset + " cannot encode U+1F600; run with -Dfile.encoding=UTF-8");
+            System.exit(2);
+        }
+        int[] windows = {16, StreamLexicalAnalyser.DEFAULT_WINDOW};
+        int checked = 0;
+        Path file = Files.createTempFile("stream-scan", ".txt");
+        try {
+            for (int window : windows) {
+                for (int n = window - 24; n <= window + 8; n++) {
+                    if (n < 0) {
+                        continue;
+                    }
+                    for (String source : programs("a".repeat(n))) {
+                        byte[] bytes = source.getBytes(charset);
+                        Files.write(file, bytes);
+                        try (FileChannel channel = FileChannel.open(file)) {
+                            check("file channel, window " + window + ", run " + n, bytes, new StreamLexicalAnalyser(channel, window));
+                        }
+                        ReadableByteChannel trickle = new Trickle(bytes, 3);
+                        check("3-byte reads, window " + window + ", run " + n, bytes, new StreamLexicalAnalyser(trickle, window));
+                        checked += 2;
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println(checked + " scans match");
+        System.out.println("PASS");
+    }
+
+    private static String[] programs(String run) {
+        return new String[] {
+            "begin\nx := \"" + run + WIDE + "\" ;\ny := 2\nend\n",
+            "begin\n" + run + WIDE + "x := 1 ;\ny := 2\nend\n",
+            "begin\nx := 1 -- " + run + WIDE + WIDE + "\n;\ny := 2\nend",
+        };
+    }
+
+    private static void check(String label, byte[] bytes, TokenSource stream) throws IOException {
+        TokenSource array = ArrayLexicalAnalyser.ofBytes(bytes, new SymbolTable(), false);
+        for (int i = 0; ; i++) {
+            Token expected = array.getNextToken();
+            Token found = stream.getNextToken();
+            if (found.symbol != expected.symbol || !found.text.equals(expected.text) || found.lineNumber != expected.lineNumber) {
+                System.out.println("FAIL " + label + ": token " + i + " is " + describe(found) + ", expected " + describe(expected));
+                System.exit(1);
+            }
+            if (expected.symbol == Token.eofSymbol) {
+                return;
+            }
+        }
+    }
+
+    private static String describe(Token token) {
+        String text = token.text.length() > 20 ? token.text.substring(0, 20) + "..." : token.text;
+        return Token.getName(token.symbol) + " '" + text + "' on line " + token.lineNumber;
+    }
+
+    /* A channel that returns at most step bytes per read, like a slow pipe. */
+    private static final class Trickle implements ReadableByteChannel {
+        private final ByteBuffer source;
+        private final int step;
+
+        Trickle(byte[] bytes, int step) {
+            this.source = ByteBuffer.wrap(bytes);
+            this.step = step;
+        }
+
+        @Override
+        public int read(ByteBuffer target) {
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(step, Math.min(source.remaining(), target.remaining()));
+            ByteBuffer slice = source.slice();
+            slice.limit(count);
+            target.put(slice);
+            source.position(source.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+
+/* Finds where the front end stops scaling. It parses ProgramGenerator programs of growing size
+and growing nesting depth and reports, for each, the wall time (best of several runs), the peak
+heap, the bytes allocated per token, the deepest nonterminal nesting and the Java stack depth
+the parser reached there. Build as described in ParserBenchmark, then:
+
+    java -Xmx2g -cp .:benchmarks StressHarness [options]
+
+Options:
+    -statements 1000,10000,...   sizes for the scaling series (default 1000 to 1000000)
+    -nesting 10,100,1000,...     depths for the nesting series (default 10 to 10000)
+    -expression n -arguments n   expression length and call argument count (default 4 and 3)
+    -broken                      plant a syntax error in the deepest statement
+    -engine recursive|table      which parser to run (default recursive)
+    -stack kb                    thread stack size for the parse (default: the JVM's)
+    -max-exponent x              allowed growth exponent of time and allocation (default 1.25)
+    -runs n                      timed runs per program (default 3)
+
+The harness fails (exit status 1) if a parse overflows the stack at a configured depth, if a
+valid program is rejected or a broken one accepted, or if time or allocated bytes grow faster
+than tokens^max-exponent between the smallest and largest program of a series. Runs shorter
+than 10 ms are left out of the time check, since timer noise dominates them. */
+
+public class StressHarness {
+
+    private static final PrintStream NULL = new PrintStream(OutputStream.nullOutputStream());
+    private static final long MIN_TIMED_NANOS = 10_000_000;
+
+    /* Counts nonterminal nesting and samples the Java stack whenever the nesting doubles. */
+    static class DepthProbe implements ParseListener {
+        int depth;
+        int maxDepth;
+        int nextSample = 1;
+        long maxFrames;
+
+        @Override
+        public void commenceNonterminal(int nonterminal) {
+            if (++depth > maxDepth) {
+                maxDepth = depth;
+                if (depth >= nextSample) {
+                    nextSample *= 2;
+                    maxFrames = Math.max(maxFrames, StackWalker.getInstance().walk(frames -> frames.count()));
+                }
+            }
+        }
+
+        @Override
+        public void finishNonterminal(int nonterminal) {
+            depth--;
+        }
+
+        @Override
+        public void insertTerminal(Token token) {
+        }
+    }
+
+    /** What one program cost to parse. */
+    static class Measurement {
+        String label;
+        long tokens;
+        long nanos;
+        long peakHeap;
+        double bytesPerToken;
+        int maxDepth;
+        long maxFrames;
+        boolean accepted;
+        String failure;
+    }
+
+    private int expressionLength = 4;
+    private int arguments = 3;
+    private boolean broken;
+    private long stackSize;
+    private double maxExponent = 1.25;
+    private int runs = 3;
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        StressHarness harness = new StressHarness();
+        List<Integer> statements = Arrays.asList(1000, 10_000, 100_000, 1_000_000);
+        List<Integer> nesting = Arrays.asList(10, 100, 1000, 10_000);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-statements":
+                    statements = integers(args[++i]);
+                    break;
+                case "-nesting":
+                    nesting = integers(args[++i]);
+                    break;
+                case "-expression":
+                    harness.expressionLength = Integer.parseInt(args[++i]);
+                    break;
+                case "-arguments":
+                    harness.arguments = Integer.parseInt(args[++i]);
+                    break;
+                case "-broken":
+                    harness.broken = true;
+                    break;
+                case "-engine":
+                    System.setProperty("parser", args[++i]);
+                    break;
+                case "-stack":
+                    harness.stackSize = Long.parseLong(args[++i]) * 1024;
+                    break;
+                case "-max-exponent":
+                    harness.maxExponent = Double.parseDouble(args[++i]);
+                    break;
+                case "-runs":
+                    harness.runs = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        harness.warmUp();
+        System.out.printf("%-22s %10s %10s %12s %10s %9s %9s  %s%n",
+                "program", "tokens", "ms", "peak heap MB", "B/token", "depth", "frames", "result");
+        List<Measurement> scaling = new ArrayList<>();
+        for (int count : statements) {
+            scaling.add(harness.run("statements-" + count, new ProgramGenerator(count, 2, harness.expressionLength, harness.arguments, harness.broken, count)));
+        }
+        harness.checkGrowth("statements", scaling);
+        List<Measurement> deep = new ArrayList<>();
+        for (int depth : nesting) {
+            deep.add(harness.run("nesting-" + depth, new ProgramGenerator(100, depth, harness.expressionLength, harness.arguments, harness.broken, depth)));
+        }
+        harness.checkGrowth("nesting", deep);
+
+        if (harness.failures.isEmpty()) {
+            System.out.println("PASS");
+        } else {
+            for (String failure : harness.failures) {
+                System.out.println("FAIL " + failure);
+            }
+            System.exit(1);
+        }
+    }
+
+    /* Parses a mid-sized program a few times first, so the first series is not timed cold. */
+    private void warmUp() throws Exception {
+        Path file = new ProgramGenerator(10_000, 10, expressionLength, arguments, broken, 0).writeTemporary();
+        try {
+            for (int i = 0; i < 5; i++) {
+                measure("warm-up", file.toString());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private Measurement run(String label, ProgramGenerator generator) throws Exception {
+        Path file = generator.writeTemporary();
+        Measurement best = null;
+        try {
+            for (int i = 0; i < runs; i++) {
+                Measurement m = measure(label, file.toString());
+                if (best == null || m.nanos < best.nanos) {
+                    best = m;
+                }
+                if (m.failure != null) {
+                    break;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        if (best.failure != null) {
+            failures.add(label + ": " + best.failure);
+        } else if (best.accepted == broken) {
+            failures.add(label + ": " + (broken ? "broken program was accepted" : "valid program was rejected"));
+        }
+        System.out.printf("%-22s %10d %10.1f %12.1f %10.1f %9d %9d  %s%n",
+                label, best.tokens, best.nanos / 1e6, best.peakHeap / 1048576.0, best.bytesPerToken, best.maxDepth,
+                best.maxFrames, best.failure != null ? best.failure : best.accepted ? "accepted" : "rejected");
+        return best;
+    }
+
+/* Parses one file on a fresh thread (so -stack applies) and measures it. Anything the parse
+throws, an OutOfMemoryError included, is recorded as the failure; only a parse that finished
+counts as accepted or rejected. */
+
+    private Measurement measure(String label, String fileName) throws Exception {
+        Measurement m = new Measurement();
+        m.label = label;
+        m.tokens = countTokens(fileName);
+
+        System.gc();
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                pools.add(pool);
+            }
+        }
+
+        DepthProbe probe = new DepthProbe();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        Thread parser = new Thread(null, () -> {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            try {
+                new SyntaxAnalyser(ArrayLexicalAnalyser.fromFile(fileName), new Generate(NULL, false, probe)).parse(new PrintStream(result));
+                m.nanos = System.nanoTime() - start;
+                m.bytesPerToken = (allocatedBytes() - allocated) / (double) m.tokens;
+                m.accepted = result.size() == 0;
+            } catch (StackOverflowError e) {
+                m.failure = "stack overflow at nesting " + probe.depth;
+            } catch (Throwable e) {
+                m.failure = e.toString();
+            }
+        }, "parser", stackSize);
+        parser.start();
+        parser.join();
+
+        for (MemoryPoolMXBean pool : pools) {
+            m.peakHeap += pool.getPeakUsage().getUsed();
+        }
+        m.maxDepth = probe.maxDepth;
+        m.maxFrames = probe.maxFrames;
+        return m;
+    }
+
+/* The tokens in a file, EOF included. The scanner is dropped on return, so its copy of the file
+is not held while the measured parse runs. */
+
+    private static long countTokens(String fileName) throws IOException {
+        TokenSource counter = ArrayLexicalAnalyser.fromFile(fileName);
+        long tokens = 1;
+        while (counter.getNextToken().symbol != Token.eofSymbol) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+/* Fits cost ~ tokens^k between the first and last measurement of a series and fails if k is
+above the limit, for wall time and for allocated bytes. */
+
+    private void checkGrowth(String series, List<Measurement> measurements) {
+        List<Measurement> timed = new ArrayList<>();
+        for (Measurement m : measurements) {
+            if (m.failure == null && m.nanos >= MIN_TIMED_NANOS) {
+                timed.add(m);
+            }
+        }
+        if (timed.size() >= 2) {
+            Measurement first = timed.get(0);
+            Measurement last = timed.get(timed.size() - 1);
+            check(series + " time", exponent(first.tokens, first.nanos, last.tokens, last.nanos));
+        }
+        List<Measurement> valid = new ArrayList<>();
+        for (Measurement m : measurements) {
+            if (m.failure == null) {
+                valid.add(m);
+            }
+        }
+        if (valid.size() >= 2) {
+            Measurement first = valid.get(0);
+            Measurement last = valid.get(valid.size() - 1);
+            check(series + " allocation", exponent(first.tokens, first.bytesPerToken * first.tokens, last.tokens, last.bytesPerToken * last.tokens));
+        }
+    }
+
+    private void check(String what, double exponent) {
+        System.out.printf("%s grows as tokens^%.2f%n", what, exponent);
+        if (exponent > maxExponent) {
+            failures.add(String.format("%s grows as tokens^%.2f, above tokens^%.2f", what, exponent, maxExponent));
+        }
+    }
+
+    private static double exponent(double tokens1, double cost1, double tokens2, double cost2) {
+        if (tokens2 <= tokens1 || cost1 <= 0 || cost2 <= 0) {
+            return 0;
+        }
+        return Math.log(cost2 / cost1) / Math.log(tokens2 / tokens1);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static List<Integer> integers(String list) {
+        List<Integer> values = new ArrayList<>();
+        for (String value : list.split(",")) {
+            values.add(Integer.parseInt(value.trim()));
+        }
+        return values;
+    }
+}
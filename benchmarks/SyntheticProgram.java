@@ -0,0 +1,49 @@
+import java.io.*;
+import java.nio.file.*;
+
+/* Writes valid programs of a requested size for the benchmarks, made of a rotating mix of every
+statement kind with short bodies, so the token mix resembles the sample programs at any size.
+Nesting stays shallow, so even the largest program parses with the default thread stack. */
+
+public class SyntheticProgram {
+
+    private static final String[] STATEMENTS = {
+        "x1 := x2 * (x3 + 12) - y / 4",
+        "call put(x1, x2, total)",
+        "if x1 < 10 then\n\ty := y + 1 ;\n\tz := z % 3\nelse\n\tcall get(y)\nend if",
+        "while count != 0 loop\n\tcount := count - 1 ;\n\ttotal := total + count * 2\nend loop",
+        "do\n\tcall get(value) ;\n\tsum := sum + value\nuntil value = 0",
+        "for (i := 0 ; i <= 100 ; i := i + 1) do\n\tcall put(i)\nend loop",
+        "text := \"the result is \"",
+    };
+
+    private SyntheticProgram() {
+    }
+
+    /* Writes a program of about size bytes (never less than one statement) to file. */
+    public static void write(Path file, long size) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file)), 1 << 16)) {
+            out.write("begin\n");
+            long written = 6;
+            int next = 0;
+            do {
+                if (next > 0) {
+                    out.write(" ;\n");
+                    written += 3;
+                }
+                String statement = STATEMENTS[next++ % STATEMENTS.length];
+                out.write(statement);
+                written += statement.length();
+            } while (written + 4 < size);
+            out.write("\nend\n");
+        }
+    }
+
+    /* Writes a program of about size bytes to a temporary file that is deleted on exit. */
+    public static Path temporary(long size) throws IOException {
+        Path file = Files.createTempFile("synthetic-" + size + "-", ".txt");
+        file.toFile().deleteOnExit();
+        write(file, size);
+        return file;
+    }
+}